@@ -2,8 +2,10 @@ package bt.nhdcl.usermicroservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class UsermicroserviceApplication {
 	
 	public static void main(String[] args) {
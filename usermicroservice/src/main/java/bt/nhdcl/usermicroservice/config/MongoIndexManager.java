@@ -0,0 +1,204 @@
+package bt.nhdcl.usermicroservice.config;
+
+import bt.nhdcl.usermicroservice.entity.Academy;
+import bt.nhdcl.usermicroservice.entity.Department;
+import bt.nhdcl.usermicroservice.entity.LoginLockout;
+import bt.nhdcl.usermicroservice.entity.OtpEntry;
+import bt.nhdcl.usermicroservice.entity.OutboxEmail;
+import bt.nhdcl.usermicroservice.entity.RefreshToken;
+import bt.nhdcl.usermicroservice.entity.RevokedToken;
+import bt.nhdcl.usermicroservice.entity.Role;
+import bt.nhdcl.usermicroservice.entity.SigningKey;
+import bt.nhdcl.usermicroservice.entity.User;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the indexes declared with {@code @Indexed} and {@code @CompoundIndex} on the
+ * entities, since auto index creation is off.
+ *
+ * Shortly after startup every entity's indexes are verified or created in the background,
+ * and then on each interval the collections are checked against {@code $indexStats}:
+ * declared indexes that do not exist (for example a unique index that existing duplicates
+ * kept from being built) and indexes that have served no operations are logged and
+ * exported as the {@code mongo.indexes.missing} and {@code mongo.indexes.unused} gauges.
+ * Services that write to a collection before the first pass call {@link #ensureIndexes}.
+ */
+@Component
+public class MongoIndexManager {
+
+    static final List<Class<?>> ENTITIES = List.of(User.class, Role.class, Academy.class, Department.class,
+            RefreshToken.class, RevokedToken.class, LoginLockout.class, OtpEntry.class, OutboxEmail.class,
+            SigningKey.class);
+
+    private static final String ID_INDEX = "_id_";
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoPersistentEntityIndexResolver indexResolver;
+    private final Set<Class<?>> ensured = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger missing = new AtomicInteger();
+    private final AtomicInteger unused = new AtomicInteger();
+
+    @Autowired
+    public MongoIndexManager(MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.indexResolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        Gauge.builder("mongo.indexes.missing", missing, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("mongo.indexes.unused", unused, AtomicInteger::get).register(meterRegistry);
+    }
+
+    // Creates the entity's declared indexes once per process; existing indexes are left as they are
+    public void ensureIndexes(Class<?> entityClass) {
+        if (ensured.contains(entityClass)) {
+            return;
+        }
+        IndexOperations indexOperations = mongoTemplate.indexOps(entityClass);
+        indexResolver.resolveIndexFor(entityClass).forEach(indexOperations::ensureIndex);
+        ensured.add(entityClass);
+    }
+
+    @Scheduled(initialDelayString = "${mongo.indexes.initial-delay-ms:5000}",
+            fixedDelayString = "${mongo.indexes.report-interval-ms:86400000}")
+    public void verifyIndexes() {
+        for (Class<?> entityClass : ENTITIES) {
+            try {
+                ensureIndexes(entityClass);
+            } catch (RuntimeException e) {
+                System.err.println("Failed to create indexes for " + mongoTemplate.getCollectionName(entityClass)
+                        + ": " + e.getMessage());
+            }
+        }
+
+        try {
+            List<IndexReport> reports = report();
+            missing.set(reports.stream().mapToInt(report -> report.getMissing().size()).sum());
+            unused.set(reports.stream().mapToInt(report -> report.getUnused().size()).sum());
+            for (IndexReport report : reports) {
+                if (!report.getMissing().isEmpty()) {
+                    System.err.println("Missing indexes on " + report.getCollection() + ": " + report.getMissing());
+                }
+                if (!report.getUnused().isEmpty()) {
+                    System.err.println("Indexes on " + report.getCollection() + " unused since "
+                            + report.getStatsSince() + ": " + report.getUnused());
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Failed to read index statistics: " + e.getMessage());
+        }
+    }
+
+    // Compares the declared indexes of every entity with what exists and how often it is used
+    public List<IndexReport> report() {
+        List<IndexReport> reports = new ArrayList<>(ENTITIES.size());
+        for (Class<?> entityClass : ENTITIES) {
+            String collection = mongoTemplate.getCollectionName(entityClass);
+
+            Set<String> existing = new HashSet<>();
+            for (IndexInfo index : mongoTemplate.indexOps(entityClass).getIndexInfo()) {
+                existing.add(index.getName());
+            }
+            List<String> missingIndexes = new ArrayList<>();
+            for (IndexDefinition definition : indexResolver.resolveIndexFor(entityClass)) {
+                String name = indexName(definition);
+                if (!existing.contains(name)) {
+                    missingIndexes.add(name);
+                }
+            }
+
+            // Operation counts since the index was built or the server last restarted
+            Map<String, Long> operations = new LinkedHashMap<>();
+            Date since = null;
+            for (Document stats : mongoTemplate.getCollection(collection)
+                    .aggregate(List.of(new Document("$indexStats", new Document())))) {
+                Document accesses = stats.get("accesses", Document.class);
+                operations.put(stats.getString("name"), ((Number) accesses.get("ops")).longValue());
+                Date indexSince = accesses.getDate("since");
+                if (since == null || (indexSince != null && indexSince.before(since))) {
+                    since = indexSince;
+                }
+            }
+            List<String> unusedIndexes = new ArrayList<>();
+            operations.forEach((name, ops) -> {
+                if (ops == 0 && !ID_INDEX.equals(name)) {
+                    unusedIndexes.add(name);
+                }
+            });
+
+            reports.add(new IndexReport(collection, missingIndexes, unusedIndexes, operations, since));
+        }
+        return reports;
+    }
+
+    // Named indexes keep their name; otherwise MongoDB's default of "field_direction" pairs
+    static String indexName(IndexDefinition definition) {
+        Object name = definition.getIndexOptions().get("name");
+        if (name != null) {
+            return name.toString();
+        }
+        StringBuilder generated = new StringBuilder();
+        definition.getIndexKeys().forEach((field, direction) -> {
+            if (generated.length() > 0) {
+                generated.append('_');
+            }
+            generated.append(field).append('_').append(direction);
+        });
+        return generated.toString();
+    }
+
+    public static final class IndexReport {
+        private final String collection;
+        private final List<String> missing;
+        private final List<String> unused;
+        private final Map<String, Long> operations;
+        private final Date statsSince;
+
+        private IndexReport(String collection, List<String> missing, List<String> unused,
+                Map<String, Long> operations, Date statsSince) {
+            this.collection = collection;
+            this.missing = missing;
+            this.unused = unused;
+            this.operations = operations;
+            this.statsSince = statsSince;
+        }
+
+        public String getCollection() {
+            return collection;
+        }
+
+        public List<String> getMissing() {
+            return missing;
+        }
+
+        public List<String> getUnused() {
+            return unused;
+        }
+
+        public Map<String, Long> getOperations() {
+            return operations;
+        }
+
+        public Date getStatsSince() {
+            return statsSince;
+        }
+    }
+}
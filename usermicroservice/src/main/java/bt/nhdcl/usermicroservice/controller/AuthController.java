@@ -1,13 +1,28 @@
 package bt.nhdcl.usermicroservice.controller;
 
+import bt.nhdcl.usermicroservice.dto.AuthenticatedUser;
+import bt.nhdcl.usermicroservice.entity.RefreshToken;
 import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.exception.InvalidTokenException;
+import bt.nhdcl.usermicroservice.exception.LoginThrottledException;
+import bt.nhdcl.usermicroservice.security.ClientIp;
+import bt.nhdcl.usermicroservice.security.NhdclUserDetails;
+import bt.nhdcl.usermicroservice.security.TokenRevocationService;
 import bt.nhdcl.usermicroservice.service.AuthService;
 import bt.nhdcl.usermicroservice.service.JWTUtil;
+import bt.nhdcl.usermicroservice.service.RefreshTokenService;
+import io.jsonwebtoken.JwtException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpHeaders;
 import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.util.HashMap;
 import java.util.Map;
@@ -16,45 +31,104 @@ import java.util.Map;
 @RequestMapping("/api/auth")
 public class AuthController {
 
+    private static final String JWT_COOKIE = "JWT-TOKEN";
+    private static final String REFRESH_COOKIE = "REFRESH-TOKEN";
+    private static final String REFRESH_COOKIE_PATH = "/api/auth";
+
     @Autowired
     private AuthService authService;
 
     @Autowired
     private JWTUtil jwtUtil;
 
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
     @PostMapping("/login")
-    public ResponseEntity<Map<String, Object>> login(@RequestBody User user, HttpServletResponse response) {
-        UserDetails userDetails = authService.login(user.getEmail(), user.getPassword());
+    public ResponseEntity<Map<String, Object>> login(@RequestBody User user, HttpServletRequest request,
+            HttpServletResponse response) {
+        UserDetails userDetails = authService.login(user.getEmail(), user.getPassword(), ClientIp.of(request));
 
-        // Generate JWT
+        // Generate JWT and the refresh token that can replace it once it expires
         String jwt = jwtUtil.generateToken(userDetails);
+        String refreshToken = refreshTokenService.issue((NhdclUserDetails) userDetails);
 
         // Create and set JWT cookie
-        Cookie jwtCookie = new Cookie("JWT-TOKEN", jwt);
-        jwtCookie.setHttpOnly(true);
-        jwtCookie.setSecure(true); // ensure HTTPS
-        jwtCookie.setPath("/");
-        jwtCookie.setMaxAge((int) (jwtUtil.getTokenExpiration() / 1000));
-        response.addCookie(jwtCookie);
+        addTokenCookies(response, jwt, refreshToken);
 
         // Prepare JSON response
         Map<String, Object> responseMap = new HashMap<>();
         responseMap.put("token", jwt);
-        responseMap.put("user", userDetails);
+        responseMap.put("refreshToken", refreshToken);
+        responseMap.put("user", AuthenticatedUser.of((NhdclUserDetails) userDetails));
 
         return ResponseEntity.ok(responseMap);
     }
 
+    // Issues a new access token from a refresh token, without checking the password again
+    @PostMapping("/refresh")
+    public ResponseEntity<Map<String, Object>> refresh(@RequestBody(required = false) Map<String, String> requestBody,
+            @CookieValue(value = REFRESH_COOKIE, required = false) String refreshCookie,
+            HttpServletResponse response) {
+        String presented = requestBody != null && requestBody.get("refreshToken") != null
+                ? requestBody.get("refreshToken")
+                : refreshCookie;
+
+        try {
+            RefreshToken consumed = refreshTokenService.consume(presented);
+
+            // The user must still be active and unchanged since the login that started this family
+            NhdclUserDetails userDetails = (NhdclUserDetails) userDetailsService.loadUserByUsername(consumed.getEmail());
+            if (!userDetails.isEnabled() || userDetails.getSecurityVersion() != consumed.getSecurityVersion()) {
+                refreshTokenService.revokeFamily(consumed.getFamilyId());
+                throw new InvalidTokenException("Session is no longer valid");
+            }
+
+            String jwt = jwtUtil.generateToken(userDetails);
+            String refreshToken = refreshTokenService.rotate(consumed);
+            addTokenCookies(response, jwt, refreshToken);
+
+            Map<String, Object> responseMap = new HashMap<>();
+            responseMap.put("token", jwt);
+            responseMap.put("refreshToken", refreshToken);
+            return ResponseEntity.ok(responseMap);
+        } catch (InvalidTokenException | UsernameNotFoundException e) {
+            return ResponseEntity.status(401).body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
     @PostMapping("/logout")
-    public ResponseEntity<Map<String, String>> logout(HttpServletResponse response) {
-        // Expire JWT cookie
-        Cookie jwtCookie = new Cookie("JWT-TOKEN", null);
-        jwtCookie.setMaxAge(0);
-        jwtCookie.setPath("/");
-        jwtCookie.setHttpOnly(true);
-        jwtCookie.setSecure(true);
+    public ResponseEntity<Map<String, String>> logout(@RequestBody(required = false) Map<String, String> requestBody,
+            @RequestHeader(value = "Authorization", required = false) String authorizationHeader,
+            @CookieValue(value = JWT_COOKIE, required = false) String jwtCookie,
+            @CookieValue(value = REFRESH_COOKIE, required = false) String refreshCookie,
+            HttpServletResponse response) {
+        // Revoke the access token so it stops working before it expires
+        String jwt = authorizationHeader != null && authorizationHeader.startsWith("Bearer ")
+                ? authorizationHeader.substring(7)
+                : jwtCookie;
+        if (jwt != null && !jwt.isEmpty()) {
+            try {
+                tokenRevocationService.revoke(jwtUtil.parse(jwt));
+            } catch (JwtException | IllegalArgumentException e) {
+                // Expired or invalid tokens cannot be used anyway
+            }
+        }
+
+        // Revoke the refresh token so the session cannot be renewed
+        refreshTokenService.revoke(requestBody != null && requestBody.get("refreshToken") != null
+                ? requestBody.get("refreshToken")
+                : refreshCookie);
 
-        response.addCookie(jwtCookie);
+        // Expire JWT and refresh token cookies
+        addCookie(response, JWT_COOKIE, null, "/", 0);
+        addCookie(response, REFRESH_COOKIE, null, REFRESH_COOKIE_PATH, 0);
 
         Map<String, String> logoutResponse = new HashMap<>();
         logoutResponse.put("message", "Logout successful");
@@ -62,10 +136,53 @@ public class AuthController {
         return ResponseEntity.ok(logoutResponse);
     }
 
+    // Ends every session of the current user, on every device
+    @PostMapping("/logout-all")
+    public ResponseEntity<Map<String, String>> logoutAll(HttpServletResponse response) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof NhdclUserDetails userDetails)) {
+            return ResponseEntity.status(401).body(Map.of("message", "Not authenticated"));
+        }
+
+        tokenRevocationService.revokeAll(userDetails.getUsername());
+        refreshTokenService.revokeAll(userDetails.getUserId());
+
+        addCookie(response, JWT_COOKIE, null, "/", 0);
+        addCookie(response, REFRESH_COOKIE, null, REFRESH_COOKIE_PATH, 0);
+
+        Map<String, String> logoutResponse = new HashMap<>();
+        logoutResponse.put("message", "All sessions logged out");
+
+        return ResponseEntity.ok(logoutResponse);
+    }
+
     @PostMapping("/keep-alive")
     public ResponseEntity<Map<String, String>> keepAlive() {
         Map<String, String> response = new HashMap<>();
         response.put("status", "active");
         return ResponseEntity.ok(response);
     }
+
+    @ExceptionHandler(LoginThrottledException.class)
+    public ResponseEntity<Map<String, Object>> handleLoginThrottled(LoginThrottledException e) {
+        return ResponseEntity.status(429)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Map.of("success", false, "message", e.getMessage()));
+    }
+
+    private void addTokenCookies(HttpServletResponse response, String jwt, String refreshToken) {
+        addCookie(response, JWT_COOKIE, jwt, "/", (int) (jwtUtil.getTokenExpiration() / 1000));
+        // The refresh token is only sent back to the auth endpoints
+        addCookie(response, REFRESH_COOKIE, refreshToken, REFRESH_COOKIE_PATH,
+                (int) (refreshTokenService.getRefreshTokenExpiration() / 1000));
+    }
+
+    private void addCookie(HttpServletResponse response, String name, String value, String path, int maxAge) {
+        Cookie cookie = new Cookie(name, value);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(true); // ensure HTTPS
+        cookie.setPath(path);
+        cookie.setMaxAge(maxAge);
+        response.addCookie(cookie);
+    }
 }
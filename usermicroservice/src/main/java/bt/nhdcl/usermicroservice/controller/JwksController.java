@@ -0,0 +1,34 @@
+package bt.nhdcl.usermicroservice.controller;
+
+import bt.nhdcl.usermicroservice.service.JwtKeyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Publishes the public JWT signing keys so other services can verify tokens locally
+@RestController
+public class JwksController {
+
+    private final JwtKeyService jwtKeyService;
+    private final long maxAgeSeconds;
+
+    @Autowired
+    public JwksController(JwtKeyService jwtKeyService,
+            @Value("${jwt.jwks.max-age-seconds:900}") long maxAgeSeconds) {
+        this.jwtKeyService = jwtKeyService;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> getJwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+                .body(jwtKeyService.jwks());
+    }
+}
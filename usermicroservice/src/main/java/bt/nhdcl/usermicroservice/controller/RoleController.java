@@ -38,6 +38,12 @@ public class RoleController {
         return role.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    @PutMapping("/{id}")
+    public ResponseEntity<Role> updateRole(@PathVariable String id, @RequestBody Role role) {
+        return roleService.updateRole(id, role).map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteRole(@PathVariable String id) {
         roleService.deleteRoleById(id);
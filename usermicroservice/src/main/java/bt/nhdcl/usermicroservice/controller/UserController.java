@@ -1,23 +1,39 @@
 package bt.nhdcl.usermicroservice.controller;
 
+import bt.nhdcl.usermicroservice.dto.BulkUpdateResult;
+import bt.nhdcl.usermicroservice.dto.BulkUserRequest;
+import bt.nhdcl.usermicroservice.dto.UserSummary;
 import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.exception.OtpThrottledException;
+import bt.nhdcl.usermicroservice.exception.ServiceBusyException;
 import bt.nhdcl.usermicroservice.exception.UserNotFoundException;
 import bt.nhdcl.usermicroservice.entity.Role;
+import bt.nhdcl.usermicroservice.security.ClientIp;
 import bt.nhdcl.usermicroservice.service.UserService;
 import bt.nhdcl.usermicroservice.service.RoleService;
 import bt.nhdcl.usermicroservice.service.CloudinaryService;
 import bt.nhdcl.usermicroservice.service.EmailService; // Add email service
+import bt.nhdcl.usermicroservice.service.UserExportService;
+import bt.nhdcl.usermicroservice.service.UserImportService;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import org.apache.hc.core5.http.HttpStatus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotNull;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -30,15 +46,20 @@ public class UserController {
     private final RoleService roleService;
     private final CloudinaryService cloudinaryService;
     private final EmailService emailService; // Inject EmailService
+    private final UserExportService userExportService;
+    private final UserImportService userImportService;
     private static final String DEFAULT_PASSWORD = "Password"; // Define default password constant
 
     @Autowired
     public UserController(UserService userService, RoleService roleService,
-            CloudinaryService cloudinaryService, EmailService emailService) {
+            CloudinaryService cloudinaryService, EmailService emailService, UserExportService userExportService,
+            UserImportService userImportService) {
         this.userService = userService;
         this.roleService = roleService;
         this.cloudinaryService = cloudinaryService;
         this.emailService = emailService; // Initialize EmailService
+        this.userExportService = userExportService;
+        this.userImportService = userImportService;
     }
 
     // Create a new user with an image upload
@@ -52,6 +73,7 @@ public class UserController {
             @RequestParam("departmentId") @Valid @NotNull String departmentId,
             @RequestParam("roleId") @Valid @NotNull String roleId,
             @RequestParam(value = "image", required = false) MultipartFile imageFile) {
+        User savedUser;
         try {
             // Check if email already exists and user is ACTIVE
             Optional<User> existingUserOpt = userService.getUserByEmail(email);
@@ -88,44 +110,94 @@ public class UserController {
             // Create and save the user with role and optional image
             User user = new User(email, password, name, employeeId, academyId, departmentId, role, imageUrl);
             user.setEnabled(true);
-            User savedUser = userService.save(user);
-
-            String subject = "🎉 Account Created - Welcome to the System";
-
-            String message = "<div style='font-family: Arial, sans-serif; max-width: 600px; padding: 20px; " +
-                    "border: 1px solid #ddd; border-radius: 8px; background-color: #f9f9f9;'>" +
-                    "<h2 style='color: #4A7F68;'>Welcome, " + name + "!</h2>" +
-                    "<p>We are pleased to inform you that your account has been successfully created.</p>" +
-                    "<p style='font-size: 16px;'>Your <strong>Temporary Password</strong> is:</p>" +
-                    "<div style='font-size: 18px; font-weight: bold; color: #ffffff; background: #4A7F68; " +
-                    "padding: 10px; border-radius: 5px; text-align: center;'>" + password + "</div>" +
-                    "<p>Please log in using the above credentials and update your password at your earliest convenience to ensure your account remains secure.</p>"
-                    +
-                    "<p>If you encounter any issues or have questions, feel free to contact our support team.</p>" +
-                    "<hr style='border: none; border-top: 1px solid #ddd;'/>" +
-                    "<p style='font-size: 14px; color: #777;'>Best regards,<br/><strong>NHDCL</strong></p>" +
-                    "</div>";
-
-            boolean emailSent = emailService.sendEmail(email, subject, message);
-
-            if (!emailSent) {
-                // Log the failure but don't prevent user creation
-                System.err.println("Failed to send welcome email to " + email);
-            }
-
-            return ResponseEntity.ok(savedUser);
+            savedUser = userService.save(user);
+        } catch (DuplicateKeyException e) {
+            // Lost a race with another registration; the unique indexes caught what the checks above missed
+            return ResponseEntity.badRequest().body("Email or Employee ID is already in use.");
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body("Error uploading image: " + e.getMessage());
         }
+
+        // The user is saved; from here a failure only costs the welcome email, never the request
+        boolean emailSent;
+        try {
+            // Queued for background delivery; the response does not wait on SMTP
+            emailSent = emailService.sendTemplate(email, "welcome",
+                    Map.of("name", name, "password", password), LocaleContextHolder.getLocale());
+        } catch (RuntimeException e) {
+            emailSent = false; // e.g. the template could not be rendered
+        }
+        if (!emailSent) {
+            // Log the failure but don't prevent user creation
+            System.err.println("Failed to queue welcome email to " + email);
+        }
+
+        // Never echo the password hash back
+        return ResponseEntity.ok(UserSummary.of(savedUser));
     }
 
-    // Get all users
+    // Create many users from a CSV (header row with the createUser fields) or a JSON array,
+    // streamed as the request body; the response reports the outcome of every row
+    @PostMapping(value = "/import", consumes = { "text/csv", MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<?> importUsers(HttpServletRequest request) {
+        UserImportService.Format format = MediaType.APPLICATION_JSON.isCompatibleWith(
+                MediaType.parseMediaType(request.getContentType()))
+                        ? UserImportService.Format.JSON
+                        : UserImportService.Format.CSV;
+        try {
+            return ResponseEntity.ok(userImportService.importUsers(request.getInputStream(), format,
+                    LocaleContextHolder.getLocale()));
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message",
+                    "Invalid import file: " + e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body(Map.of("success", false, "message",
+                    "Error reading import file: " + e.getMessage()));
+        }
+    }
+
+    // Get all users; with any of cursor, size or includeTotal the result is paged
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
-        List<User> users = userService.getAllUsers();
-        return ResponseEntity.ok(users);
+    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) Boolean includeTotal) {
+        if (cursor == null && size == null && includeTotal == null) {
+            // Unpaged list, kept for existing clients
+            List<UserSummary> users = userService.getAllUsers();
+            return ResponseEntity.ok(users);
+        }
+
+        try {
+            return ResponseEntity.ok(userService.getUsersPage(cursor, size, Boolean.TRUE.equals(includeTotal)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
+    // Stream every matching user as NDJSON (default) or CSV without loading them into memory
+    @GetMapping("/export")
+    public ResponseEntity<?> exportUsers(@RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) Boolean enabled,
+            @RequestParam(required = false) String academyId,
+            @RequestParam(required = false) String departmentId) {
+        UserExportService.Format exportFormat;
+        try {
+            exportFormat = UserExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message",
+                    "Unsupported export format: " + format));
+        }
+
+        StreamingResponseBody body = out -> userExportService.export(enabled, academyId, departmentId,
+                exportFormat, out);
+        boolean csv = exportFormat == UserExportService.Format.CSV;
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                        : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users." + (csv ? "csv" : "ndjson") + "\"")
+                .body(body);
     }
 
     @DeleteMapping("/{id}")
@@ -147,7 +219,7 @@ public class UserController {
                     .body(Map.of("success", false, "message", "Email is required"));
         }
 
-        Optional<User> userOptional = userService.getUserByEmail(email);
+        Optional<UserSummary> userOptional = userService.getUserSummaryByEmail(email);
         if (userOptional.isPresent()) {
             return ResponseEntity.ok(Map.of("success", true, "user", userOptional.get()));
         } else {
@@ -223,16 +295,77 @@ public class UserController {
         }
     }
 
+    // Enable or disable every selected user; the body holds userIds and/or filter, and enabled
+    @PutMapping("/bulk/enabled")
+    public ResponseEntity<?> bulkUpdateEnabledStatus(@RequestBody BulkUserRequest request) {
+        if (request.getEnabled() == null) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("success", false, "message", "Missing 'enabled' field in request"));
+        }
+        try {
+            return bulkResult(userService.updateUsersEnabledStatus(request.getUserIds(), request.getFilter(),
+                    request.getEnabled()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
+    // Soft delete every selected user
+    @PostMapping("/bulk/delete")
+    public ResponseEntity<?> bulkSoftDelete(@RequestBody BulkUserRequest request) {
+        try {
+            return bulkResult(userService.updateUsersEnabledStatus(request.getUserIds(), request.getFilter(), false));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
+    @PutMapping("/bulk/role")
+    public ResponseEntity<?> bulkAssignRole(@RequestBody BulkUserRequest request) {
+        if (request.getRoleId() == null) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("success", false, "message", "Missing 'roleId' field in request"));
+        }
+        Optional<Role> role = roleService.getRoleById(request.getRoleId());
+        if (role.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Role not found."));
+        }
+        try {
+            return bulkResult(userService.assignRole(request.getUserIds(), request.getFilter(), role.get()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
+    @PutMapping("/bulk/department")
+    public ResponseEntity<?> bulkAssignDepartment(@RequestBody BulkUserRequest request) {
+        if (request.getDepartmentId() == null) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("success", false, "message", "Missing 'departmentId' field in request"));
+        }
+        try {
+            return bulkResult(userService.assignDepartment(request.getUserIds(), request.getFilter(),
+                    request.getDepartmentId()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
+    private static ResponseEntity<?> bulkResult(BulkUpdateResult result) {
+        return ResponseEntity.ok(Map.of("success", true, "matched", result.getMatched(),
+                "modified", result.getModified()));
+    }
+
     // Forgot Password - Generate OTP
     @PostMapping("/forgot-password")
-    public ResponseEntity<?> forgotPassword(@RequestBody Map<String, String> requestBody) {
+    public ResponseEntity<?> forgotPassword(@RequestBody Map<String, String> requestBody, HttpServletRequest request) {
         String email = requestBody.get("email");
         if (email == null || email.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Email is required"));
         }
 
         // Generate OTP and handle the result
-        boolean otpSent = userService.generateOtp(email);
+        boolean otpSent = userService.generateOtp(email, ClientIp.of(request));
 
         if (otpSent) {
             return ResponseEntity.ok(Map.of("success", true, "message", "OTP sent to email."));
@@ -258,7 +391,8 @@ public class UserController {
     }
 
     @PostMapping("/resend-otp")
-    public ResponseEntity<Map<String, Object>> resendOtp(@RequestBody Map<String, String> requestBody) {
+    public ResponseEntity<Map<String, Object>> resendOtp(@RequestBody Map<String, String> requestBody,
+            HttpServletRequest request) {
         String email = requestBody.get("email");
 
         if (email == null || email.isEmpty()) {
@@ -276,7 +410,7 @@ public class UserController {
         }
 
         // Generate and send a new OTP
-        boolean otpSent = userService.generateOtp(email);
+        boolean otpSent = userService.resendOtp(email, ClientIp.of(request));
         if (!otpSent) {
             return ResponseEntity.internalServerError().body(Map.of(
                     "success", false,
@@ -300,8 +434,8 @@ public class UserController {
                     "message", "Email, OTP, and new password are required"));
         }
 
-        // Validate OTP first
-        boolean isValidOtp = userService.validateOtp(email, otp);
+        // Validate and use up the OTP first, so it cannot reset the password twice
+        boolean isValidOtp = userService.consumeOtp(email, otp);
         if (!isValidOtp) {
             return ResponseEntity.badRequest().body(Map.of(
                     "success", false,
@@ -346,10 +480,21 @@ public class UserController {
             return ResponseEntity
                     .badRequest()
                     .body(Map.of("error", e.getMessage()));
+        } catch (ServiceBusyException e) {
+            return ResponseEntity
+                    .status(HttpStatus.SC_SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity
                     .status(HttpStatus.SC_INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "An unexpected error occurred."));
         }
     }
-}
\ No newline at end of file
+
+    @ExceptionHandler(OtpThrottledException.class)
+    public ResponseEntity<Map<String, Object>> handleOtpThrottled(OtpThrottledException e) {
+        return ResponseEntity.status(429)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Map.of("success", false, "message", e.getMessage()));
+    }
+}
@@ -0,0 +1,75 @@
+package bt.nhdcl.usermicroservice.dto;
+
+import bt.nhdcl.usermicroservice.security.NhdclUserDetails;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * The user returned by a successful login. Same properties the client read from
+ * {@link NhdclUserDetails}, minus the password hash and security version.
+ */
+public class AuthenticatedUser {
+
+    private final String userId;
+    private final String username;
+    private final String name;
+    private final boolean enabled;
+    private final String image;
+    private final String academyId;
+    private final String departmentId;
+    private final String roleName;
+    private final Collection<? extends GrantedAuthority> authorities;
+
+    private AuthenticatedUser(NhdclUserDetails userDetails) {
+        this.userId = userDetails.getUserId();
+        this.username = userDetails.getUsername();
+        this.name = userDetails.getName();
+        this.enabled = userDetails.isEnabled();
+        this.image = userDetails.getImage();
+        this.academyId = userDetails.getAcademyId();
+        this.departmentId = userDetails.getDepartmentId();
+        this.roleName = userDetails.getRoleName();
+        this.authorities = userDetails.getAuthorities();
+    }
+
+    public static AuthenticatedUser of(NhdclUserDetails userDetails) {
+        return new AuthenticatedUser(userDetails);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public String getAcademyId() {
+        return academyId;
+    }
+
+    public String getDepartmentId() {
+        return departmentId;
+    }
+
+    public String getRoleName() {
+        return roleName;
+    }
+
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+}
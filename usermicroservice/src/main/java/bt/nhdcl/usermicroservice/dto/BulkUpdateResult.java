@@ -0,0 +1,23 @@
+package bt.nhdcl.usermicroservice.dto;
+
+/**
+ * Counts from a bulk user update: users selected, and users actually changed.
+ */
+public class BulkUpdateResult {
+
+    private final long matched;
+    private final long modified;
+
+    public BulkUpdateResult(long matched, long modified) {
+        this.matched = matched;
+        this.modified = modified;
+    }
+
+    public long getMatched() {
+        return matched;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+}
@@ -0,0 +1,57 @@
+package bt.nhdcl.usermicroservice.dto;
+
+import java.util.List;
+
+/**
+ * Body of the bulk user endpoints. The users are chosen by {@code userIds}, by
+ * {@code filter}, or by both together; the other fields carry the new value for the
+ * endpoints that need one.
+ */
+public class BulkUserRequest {
+
+    private List<String> userIds;
+    private UserFilter filter;
+    private Boolean enabled;
+    private String roleId;
+    private String departmentId;
+
+    public List<String> getUserIds() {
+        return userIds;
+    }
+
+    public void setUserIds(List<String> userIds) {
+        this.userIds = userIds;
+    }
+
+    public UserFilter getFilter() {
+        return filter;
+    }
+
+    public void setFilter(UserFilter filter) {
+        this.filter = filter;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getRoleId() {
+        return roleId;
+    }
+
+    public void setRoleId(String roleId) {
+        this.roleId = roleId;
+    }
+
+    public String getDepartmentId() {
+        return departmentId;
+    }
+
+    public void setDepartmentId(String departmentId) {
+        this.departmentId = departmentId;
+    }
+}
@@ -0,0 +1,90 @@
+package bt.nhdcl.usermicroservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk user import, with one entry per data row in input order.
+ */
+public class ImportReport {
+
+    public static final String CREATED = "CREATED";
+    public static final String FAILED = "FAILED";
+
+    private final List<RowResult> rows = new ArrayList<>();
+    private int created;
+    private int failed;
+
+    public void add(RowResult row) {
+        rows.add(row);
+        if (CREATED.equals(row.getStatus())) {
+            created++;
+        } else {
+            failed++;
+        }
+    }
+
+    public int getTotal() {
+        return rows.size();
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<RowResult> getRows() {
+        return rows;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class RowResult {
+
+        private final int row;
+        private final String email;
+        private final String status;
+        private final String userId;
+        private final String message;
+
+        private RowResult(int row, String email, String status, String userId, String message) {
+            this.row = row;
+            this.email = email;
+            this.status = status;
+            this.userId = userId;
+            this.message = message;
+        }
+
+        public static RowResult created(int row, String email, String userId) {
+            return new RowResult(row, email, CREATED, userId, null);
+        }
+
+        public static RowResult failed(int row, String email, String message) {
+            return new RowResult(row, email, FAILED, null, message);
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package bt.nhdcl.usermicroservice.dto;
+
+/**
+ * Selects users by their attributes; fields left null match every value.
+ */
+public class UserFilter {
+
+    private String academyId;
+    private String departmentId;
+    private String roleId;
+    private Boolean enabled;
+
+    public String getAcademyId() {
+        return academyId;
+    }
+
+    public void setAcademyId(String academyId) {
+        this.academyId = academyId;
+    }
+
+    public String getDepartmentId() {
+        return departmentId;
+    }
+
+    public void setDepartmentId(String departmentId) {
+        this.departmentId = departmentId;
+    }
+
+    public String getRoleId() {
+        return roleId;
+    }
+
+    public void setRoleId(String roleId) {
+        this.roleId = roleId;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEmpty() {
+        return academyId == null && departmentId == null && roleId == null && enabled == null;
+    }
+}
@@ -0,0 +1,96 @@
+package bt.nhdcl.usermicroservice.dto;
+
+import bt.nhdcl.usermicroservice.entity.User;
+
+/**
+ * Read model for user listings and lookups. It carries only what clients display, never
+ * the password hash or OTP state, and the role as an id and name instead of the full
+ * referenced document.
+ */
+public class UserSummary {
+
+    private final String userId;
+    private final String employeeId;
+    private final String email;
+    private final String name;
+    private final boolean enabled;
+    private final String image;
+    private final String academyId;
+    private final String departmentId;
+    private final RoleSummary role;
+
+    public UserSummary(String userId, String employeeId, String email, String name, boolean enabled, String image,
+            String academyId, String departmentId, RoleSummary role) {
+        this.userId = userId;
+        this.employeeId = employeeId;
+        this.email = email;
+        this.name = name;
+        this.enabled = enabled;
+        this.image = image;
+        this.academyId = academyId;
+        this.departmentId = departmentId;
+        this.role = role;
+    }
+
+    public static UserSummary of(User user) {
+        RoleSummary role = user.getRole() == null ? null
+                : new RoleSummary(user.getRole().getRoleId(), user.getRole().getName());
+        return new UserSummary(user.getUserId(), user.getEmployeeId(), user.getEmail(), user.getName(),
+                user.isEnabled(), user.getImage(), user.getAcademyId(), user.getDepartmentId(), role);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getEmployeeId() {
+        return employeeId;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public String getAcademyId() {
+        return academyId;
+    }
+
+    public String getDepartmentId() {
+        return departmentId;
+    }
+
+    public RoleSummary getRole() {
+        return role;
+    }
+
+    public static class RoleSummary {
+
+        private final String roleId;
+        private final String name;
+
+        public RoleSummary(String roleId, String name) {
+            this.roleId = roleId;
+            this.name = name;
+        }
+
+        public String getRoleId() {
+            return roleId;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package bt.nhdcl.usermicroservice.entity;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "academies") // Defines the MongoDB collection
@@ -9,6 +10,7 @@ public class Academy {
     @Id // MongoDB ID annotation
     private String academyId; // Changed type to String (MongoDB stores ObjectId as String)
 
+    @Indexed
     private String name;
     private String location;
     private String image; // URL or Base64 string
@@ -0,0 +1,43 @@
+package bt.nhdcl.usermicroservice.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Document(collection = "login_lockouts") // Lockouts shared between instances
+public class LoginLockout {
+
+    @Id
+    private String key; // "email:<address>" or "ip:<address>"
+
+    @Indexed(expireAfterSeconds = 0) // MongoDB removes the lockout once it ends
+    private Date lockedUntil;
+
+    // Default constructor
+    public LoginLockout() {
+    }
+
+    public LoginLockout(String key, Date lockedUntil) {
+        this.key = key;
+        this.lockedUntil = lockedUntil;
+    }
+
+    // Getters and Setters
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public Date getLockedUntil() {
+        return lockedUntil;
+    }
+
+    public void setLockedUntil(Date lockedUntil) {
+        this.lockedUntil = lockedUntil;
+    }
+}
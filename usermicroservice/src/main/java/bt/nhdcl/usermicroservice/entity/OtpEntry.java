@@ -0,0 +1,64 @@
+package bt.nhdcl.usermicroservice.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Document(collection = "otps") // Pending OTPs shared between instances
+public class OtpEntry {
+
+    @Id
+    private String email; // One pending OTP per email
+
+    private int code;
+
+    private int failedAttempts; // Wrong guesses so far
+
+    @Indexed(expireAfterSeconds = 0) // MongoDB removes the OTP once it expires
+    private Date expiresAt;
+
+    // Default constructor
+    public OtpEntry() {
+    }
+
+    public OtpEntry(String email, int code, Date expiresAt) {
+        this.email = email;
+        this.code = code;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters and Setters
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public void setCode(int code) {
+        this.code = code;
+    }
+
+    public int getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    public void setFailedAttempts(int failedAttempts) {
+        this.failedAttempts = failedAttempts;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
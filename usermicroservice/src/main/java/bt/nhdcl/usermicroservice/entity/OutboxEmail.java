@@ -0,0 +1,137 @@
+package bt.nhdcl.usermicroservice.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Document(collection = "email_outbox") // Emails waiting to be sent, shared by every instance
+@CompoundIndex(name = "claimable", def = "{'status': 1, 'nextAttemptAt': 1}")
+public class OutboxEmail {
+
+    public static final String PENDING = "PENDING";
+    public static final String SENT = "SENT";
+    public static final String DEAD = "DEAD";
+
+    @Id
+    private String id;
+
+    private String to;
+    private String subject;
+    private String htmlContent; // Cleared once the email is sent, as it may contain credentials
+    private String status;
+    private int attempts;
+    private Date createdAt;
+    private Date nextAttemptAt; // Not claimed before this time; pushed back after a failed attempt
+
+    private String leaseOwner; // Claim that is currently sending the email
+    private Date leaseExpiresAt; // After this another claim may take the email over
+
+    @Indexed(expireAfterSeconds = 0) // Set once the email is sent or dead; MongoDB removes it afterwards
+    private Date expireAt;
+
+    // Default constructor
+    public OutboxEmail() {
+    }
+
+    public OutboxEmail(String to, String subject, String htmlContent, Date createdAt) {
+        this.to = to;
+        this.subject = subject;
+        this.htmlContent = htmlContent;
+        this.status = PENDING;
+        this.createdAt = createdAt;
+        this.nextAttemptAt = createdAt;
+        this.leaseExpiresAt = new Date(0);
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getHtmlContent() {
+        return htmlContent;
+    }
+
+    public void setHtmlContent(String htmlContent) {
+        this.htmlContent = htmlContent;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Date getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Date nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public Date getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(Date leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public Date getExpireAt() {
+        return expireAt;
+    }
+
+    public void setExpireAt(Date expireAt) {
+        this.expireAt = expireAt;
+    }
+}
@@ -0,0 +1,109 @@
+package bt.nhdcl.usermicroservice.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Document(collection = "refresh_tokens") // Defines the MongoDB collection
+public class RefreshToken {
+
+    @Id
+    private String tokenHash; // SHA-256 of the token; the token itself is never stored
+
+    @Indexed
+    private String userId;
+
+    private String email;
+
+    @Indexed
+    private String familyId; // Shared by every token rotated from the same login
+
+    private long securityVersion; // User's security version when the family was issued
+    private boolean used; // Set once the token has been exchanged for a new one
+    private Date createdAt;
+
+    @Indexed(expireAfterSeconds = 0) // MongoDB removes the document once it expires
+    private Date expiresAt;
+
+    // Default constructor
+    public RefreshToken() {
+    }
+
+    public RefreshToken(String tokenHash, String userId, String email, String familyId, long securityVersion,
+            Date createdAt, Date expiresAt) {
+        this.tokenHash = tokenHash;
+        this.userId = userId;
+        this.email = email;
+        this.familyId = familyId;
+        this.securityVersion = securityVersion;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters and Setters
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getFamilyId() {
+        return familyId;
+    }
+
+    public void setFamilyId(String familyId) {
+        this.familyId = familyId;
+    }
+
+    public long getSecurityVersion() {
+        return securityVersion;
+    }
+
+    public void setSecurityVersion(long securityVersion) {
+        this.securityVersion = securityVersion;
+    }
+
+    public boolean isUsed() {
+        return used;
+    }
+
+    public void setUsed(boolean used) {
+        this.used = used;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
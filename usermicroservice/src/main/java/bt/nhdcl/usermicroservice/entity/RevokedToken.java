@@ -0,0 +1,94 @@
+package bt.nhdcl.usermicroservice.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Document(collection = "revoked_tokens") // Access tokens revoked before their expiry
+public class RevokedToken {
+
+    @Id
+    private String id; // Token ID ("jti"), "user:<email>" when every token of a user is revoked, or "sv:<userId>"
+
+    private String subject; // Set for user-wide revocations
+    private Date revokedBefore; // User-wide revocations cover every token issued before this time
+    private String userId; // Set for security version entries
+    private Long securityVersion; // Tokens carrying an older "sv" claim are no longer accepted
+
+    @Indexed
+    private Date revokedAt; // Lets each instance fetch only revocations it has not seen yet
+
+    @Indexed(expireAfterSeconds = 0) // Once the token has expired the entry is no longer needed
+    private Date expiresAt;
+
+    // Default constructor
+    public RevokedToken() {
+    }
+
+    public RevokedToken(String id, String subject, Date revokedBefore, Date revokedAt, Date expiresAt) {
+        this.id = id;
+        this.subject = subject;
+        this.revokedBefore = revokedBefore;
+        this.revokedAt = revokedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public Date getRevokedBefore() {
+        return revokedBefore;
+    }
+
+    public void setRevokedBefore(Date revokedBefore) {
+        this.revokedBefore = revokedBefore;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public Long getSecurityVersion() {
+        return securityVersion;
+    }
+
+    public void setSecurityVersion(Long securityVersion) {
+        this.securityVersion = securityVersion;
+    }
+
+    public Date getRevokedAt() {
+        return revokedAt;
+    }
+
+    public void setRevokedAt(Date revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -1,6 +1,7 @@
 package bt.nhdcl.usermicroservice.entity;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "roles") // Defines the MongoDB collection
@@ -9,6 +10,7 @@ public class Role {
     @Id // MongoDB ID annotation
     private String roleId; // MongoDB stores ObjectId as String
 
+    @Indexed(unique = true)
     private String name; // Role name (can be 'Admin', 'User', etc.)
     private String description; // Description of the role
 
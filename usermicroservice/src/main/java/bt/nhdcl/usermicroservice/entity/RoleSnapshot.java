@@ -0,0 +1,32 @@
+package bt.nhdcl.usermicroservice.entity;
+
+import org.springframework.data.annotation.Id;
+
+// Copy of a user's role kept on the user document, so loading a user needs no roles lookup.
+// The id is stored as "_id" like in the roles collection; renames are fanned out by RoleSnapshotService.
+public class RoleSnapshot {
+
+    @Id
+    private String roleId;
+    private String name;
+
+    public RoleSnapshot() {
+    }
+
+    public RoleSnapshot(String roleId, String name) {
+        this.roleId = roleId;
+        this.name = name;
+    }
+
+    public static RoleSnapshot of(Role role) {
+        return role == null ? null : new RoleSnapshot(role.getRoleId(), role.getName());
+    }
+
+    public String getRoleId() {
+        return roleId;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
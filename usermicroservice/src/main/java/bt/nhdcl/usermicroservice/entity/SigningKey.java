@@ -0,0 +1,82 @@
+package bt.nhdcl.usermicroservice.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Document(collection = "signing_keys") // Key pairs used to sign JWTs, shared by every instance
+public class SigningKey {
+
+    @Id
+    private String kid; // Key ID, sent in the "kid" header of every token signed with this key
+
+    private String algorithm; // JWS algorithm, e.g. RS256
+    private String publicKey; // Base64 X.509 encoded public key
+    private String privateKey; // PKCS#8 encoded private key, AES-GCM encrypted ("aes-gcm:<iv>:<ciphertext>")
+    private Date activatesAt; // When the key starts signing tokens; it is published before then
+    private Date expiresAt; // After this the key no longer verifies any live token
+
+    // Default constructor
+    public SigningKey() {
+    }
+
+    public SigningKey(String kid, String algorithm, String publicKey, String privateKey, Date activatesAt,
+            Date expiresAt) {
+        this.kid = kid;
+        this.algorithm = algorithm;
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+        this.activatesAt = activatesAt;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters and Setters
+    public String getKid() {
+        return kid;
+    }
+
+    public void setKid(String kid) {
+        this.kid = kid;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public String getPublicKey() {
+        return publicKey;
+    }
+
+    public void setPublicKey(String publicKey) {
+        this.publicKey = publicKey;
+    }
+
+    public String getPrivateKey() {
+        return privateKey;
+    }
+
+    public void setPrivateKey(String privateKey) {
+        this.privateKey = privateKey;
+    }
+
+    public Date getActivatesAt() {
+        return activatesAt;
+    }
+
+    public void setActivatesAt(Date activatesAt) {
+        this.activatesAt = activatesAt;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -1,18 +1,33 @@
 package bt.nhdcl.usermicroservice.entity;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
-import org.springframework.data.mongodb.core.mapping.DBRef;
 
 import java.time.LocalDateTime;
 
 @Document(collection = "users") // Defines the MongoDB collection
+@CompoundIndexes({
+        // Active users of an academy or department, and the export filters
+        @CompoundIndex(name = "enabled_academy_department", def = "{'enabled': 1, 'academyId': 1, 'departmentId': 1}"),
+        // Keyset pagination of active users
+        @CompoundIndex(name = "enabled_id", def = "{'enabled': 1, '_id': 1}"),
+        // Role rename fan-out
+        @CompoundIndex(name = "role_id", def = "{'role._id': 1}")
+})
 public class User {
 
     @Id
     private String userId; // MongoDB ID (stored as a String)
+
+    @Indexed(unique = true, sparse = true)
     private String employeeId;
+
+    @Indexed(unique = true) // Soft-deleted users are removed before their email is registered again
     private String email;
+
     private String password;
     private boolean enabled;
     private String image;
@@ -20,12 +35,16 @@ public class User {
     private String academyId;
     private String departmentId;
 
-    @DBRef // References the Role collection
-    private Role role; // Store Role object instead of just roleId
+    // Embedded {_id, name} of the role; documents written before this still hold a DBRef,
+    // which is resolved on read until RoleSnapshotService has migrated them
+    private RoleSnapshot role;
 
     private String otp;
     private LocalDateTime otpExpiry;
 
+    // Incremented whenever a change must invalidate the user's issued tokens
+    private long securityVersion;
+
     // Constructors
     public User() {
     }
@@ -38,7 +57,7 @@ public class User {
         this.employeeId = employeeId;
         this.academyId = academyId;
         this.departmentId = departmentId;
-        this.role = role;
+        this.role = RoleSnapshot.of(role);
         this.image = image;
     }
 
@@ -115,11 +134,11 @@ public class User {
         this.departmentId = departmentId;
     }
 
-    public Role getRole() {
+    public RoleSnapshot getRole() {
         return role;
     }
 
-    public void setRole(Role role) {
+    public void setRole(RoleSnapshot role) {
         this.role = role;
     }
 
@@ -138,4 +157,12 @@ public class User {
     public void setOtpExpiry(LocalDateTime otpExpiry) {
         this.otpExpiry = otpExpiry;
     }
+
+    public long getSecurityVersion() {
+        return securityVersion;
+    }
+
+    public void setSecurityVersion(long securityVersion) {
+        this.securityVersion = securityVersion;
+    }
 }
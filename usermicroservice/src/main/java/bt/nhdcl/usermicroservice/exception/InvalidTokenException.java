@@ -0,0 +1,7 @@
+package bt.nhdcl.usermicroservice.exception;
+
+public class InvalidTokenException extends RuntimeException {
+    public InvalidTokenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,14 @@
+package bt.nhdcl.usermicroservice.repository;
+
+import bt.nhdcl.usermicroservice.entity.LoginLockout;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface LoginLockoutRepository extends MongoRepository<LoginLockout, String> {
+
+    List<LoginLockout> findByLockedUntilAfter(Date now);
+}
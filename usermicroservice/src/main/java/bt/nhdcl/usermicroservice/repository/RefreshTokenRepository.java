@@ -0,0 +1,13 @@
+package bt.nhdcl.usermicroservice.repository;
+
+import bt.nhdcl.usermicroservice.entity.RefreshToken;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RefreshTokenRepository extends MongoRepository<RefreshToken, String> {
+
+    long deleteByFamilyId(String familyId); // Revoke every token rotated from one login
+
+    long deleteByUserId(String userId); // Revoke every session of a user
+}
@@ -0,0 +1,16 @@
+package bt.nhdcl.usermicroservice.repository;
+
+import bt.nhdcl.usermicroservice.entity.RevokedToken;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface RevokedTokenRepository extends MongoRepository<RevokedToken, String> {
+
+    List<RevokedToken> findByRevokedAtAfter(Date since);
+
+    List<RevokedToken> findByExpiresAtAfter(Date now);
+}
@@ -0,0 +1,15 @@
+package bt.nhdcl.usermicroservice.repository;
+
+import bt.nhdcl.usermicroservice.entity.SigningKey;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface SigningKeyRepository extends MongoRepository<SigningKey, String> {
+
+    // Keys that can still verify live tokens, latest activation first
+    List<SigningKey> findByExpiresAtAfterOrderByActivatesAtDesc(Date now);
+}
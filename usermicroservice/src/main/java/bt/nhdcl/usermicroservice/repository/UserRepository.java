@@ -2,6 +2,7 @@ package bt.nhdcl.usermicroservice.repository;
 
 import bt.nhdcl.usermicroservice.entity.User;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -13,6 +14,10 @@ public interface UserRepository extends MongoRepository<User, String> {
 
     Optional<User> findByEmail(String email); // Find user by email
 
+    // Login lookup: everything but the OTP state, which authentication never reads
+    @Query(value = "{ 'email': ?0 }", fields = "{ 'otp': 0, 'otpExpiry': 0 }")
+    Optional<User> findCredentialsByEmail(String email);
+
     Optional<User> findById(String id); // Find user by ID (MongoDB uses String ID)
 
     void deleteById(String id); // Delete user by ID\\
@@ -0,0 +1,25 @@
+package bt.nhdcl.usermicroservice.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Resolves the address of the client behind the gateway.
+ */
+public final class ClientIp {
+
+    private ClientIp() {
+    }
+
+    // Earlier X-Forwarded-For entries are written by the client and can be forged; the last one
+    // is the address our gateway appended for the connection it received
+    public static String of(HttpServletRequest request) {
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        if (forwardedFor != null && !forwardedFor.isBlank()) {
+            String last = forwardedFor.substring(forwardedFor.lastIndexOf(',') + 1).trim();
+            if (!last.isEmpty()) {
+                return last;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+}
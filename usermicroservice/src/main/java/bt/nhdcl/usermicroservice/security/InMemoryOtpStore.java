@@ -0,0 +1,90 @@
+package bt.nhdcl.usermicroservice.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * OTP store kept in the memory of this instance; the default when {@code otp.store}
+ * is not set. Only suitable for a single instance or with sticky routing.
+ *
+ * Safe for concurrent use. Expired entries are removed by a scheduled sweep, so an
+ * abandoned forgot-password flow does not keep its entry forever, and the number of
+ * entries is capped so a flood of requests cannot grow the map without bound.
+ */
+@Component
+@ConditionalOnProperty(name = "otp.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryOtpStore implements OtpStore {
+
+    private final int maxEntries;
+    private final Map<String, OtpDetails> entries = new ConcurrentHashMap<>();
+
+    public InMemoryOtpStore(@Value("${otp.max-entries:100000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public boolean put(String email, OtpDetails otpDetails) {
+        if (entries.size() >= maxEntries && !entries.containsKey(email)) {
+            purgeExpired();
+            if (entries.size() >= maxEntries) {
+                return false;
+            }
+        }
+        entries.put(email, otpDetails);
+        return true;
+    }
+
+    @Override
+    public OtpDetails get(String email) {
+        OtpDetails otpDetails = entries.get(email);
+        if (otpDetails != null && otpDetails.isExpired(System.currentTimeMillis())) {
+            entries.remove(email, otpDetails);
+            return null;
+        }
+        return otpDetails;
+    }
+
+    @Override
+    public OtpCheck check(String email, String otp, int maxAttempts, boolean consume) {
+        long now = System.currentTimeMillis();
+        OtpCheck[] result = {OtpCheck.NONE};
+        // Compared and counted under the entry's lock, so concurrent guesses are serialised
+        entries.computeIfPresent(email, (key, otpDetails) -> {
+            if (otpDetails.isExpired(now) || otpDetails.getFailedAttempts() >= maxAttempts) {
+                return null;
+            }
+            if (otpDetails.matches(otp)) {
+                result[0] = OtpCheck.MATCHED;
+                return consume ? null : otpDetails;
+            }
+            OtpDetails counted = otpDetails.withFailedAttempt();
+            if (counted.getFailedAttempts() >= maxAttempts) {
+                result[0] = OtpCheck.EXHAUSTED;
+                return null;
+            }
+            result[0] = OtpCheck.MISMATCHED;
+            return counted;
+        });
+        return result[0];
+    }
+
+    @Override
+    public void remove(String email) {
+        entries.remove(email);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Scheduled(fixedDelayString = "${otp.sweep-interval-ms:30000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(otpDetails -> otpDetails.isExpired(now));
+    }
+}
@@ -13,7 +13,11 @@ import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.beans.factory.annotation.Value;
+import bt.nhdcl.usermicroservice.entity.RoleSnapshot;
+import bt.nhdcl.usermicroservice.entity.User;
 import bt.nhdcl.usermicroservice.service.JWTUtil;
+import bt.nhdcl.usermicroservice.service.ParsedToken;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -25,26 +29,51 @@ public class JwtRequestFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private UserSecurityVersions userSecurityVersions;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    // When enabled, the principal is built from the token claims instead of being loaded from MongoDB
+    @Value("${jwt.stateless.enabled:false}")
+    private boolean statelessAuthentication;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
             throws ServletException, IOException {
 
         final String authorizationHeader = request.getHeader("Authorization");
         String username = null;
-        String jwt = null;
+        ParsedToken token = null;
 
         // Extract JWT token from the Authorization header
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7); // Remove "Bearer " prefix
-            username = jwtUtil.extractUsername(jwt); // Extract username from JWT
+            String jwt = authorizationHeader.substring(7); // Remove "Bearer " prefix
+
+            // Reuse a token we have already verified, otherwise verify and parse it once
+            token = verifiedTokenCache.get(jwt);
+            if (token == null) {
+                token = jwtUtil.parse(jwt);
+                verifiedTokenCache.put(jwt, token);
+            }
+            username = token.getSubject(); // Extract username from JWT
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            // Load the user details from the database (MongoDB)
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+        // Tokens revoked by a logout are treated as if no token had been sent
+        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null
+                && !tokenRevocationService.isRevoked(token)) {
+            UserDetails userDetails = statelessAuthentication ? userDetailsFromClaims(token) : null;
+            if (userDetails == null) {
+                // Load the user details from the database (MongoDB)
+                userDetails = this.userDetailsService.loadUserByUsername(username);
+            }
 
             // Validate the JWT token
-            if (jwtUtil.validateToken(jwt, userDetails)) {
+            if (jwtUtil.validateToken(token, userDetails) && isCurrentVersion(token, userDetails)) {
                 // Create an authentication token for the user and set it to the SecurityContext
                 UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
@@ -58,4 +87,39 @@ public class JwtRequestFilter extends OncePerRequestFilter {
         // Continue the request-response chain
         chain.doFilter(request, response);
     }
+
+    // Rebuilds the principal from the claims, or returns null when the database has to be consulted
+    private UserDetails userDetailsFromClaims(ParsedToken token) {
+        String userId = token.getUserId();
+        Long securityVersion = token.getSecurityVersion();
+        if (userId == null || securityVersion == null) {
+            return null; // Token was issued before these claims existed
+        }
+        if (userSecurityVersions.isStale(userId, securityVersion)) {
+            return null; // Password, status or role changed since the token was issued
+        }
+
+        String roleName = token.getRoleName();
+
+        User user = new User();
+        user.setUserId(userId);
+        user.setEmail(token.getSubject());
+        user.setAcademyId(token.getAcademyId());
+        user.setDepartmentId(token.getDepartmentId());
+        user.setRole(roleName != null ? new RoleSnapshot(null, roleName) : null);
+        user.setEnabled(true);
+        user.setSecurityVersion(securityVersion);
+        return new NhdclUserDetails(user);
+    }
+
+    // Rejects tokens issued before the user's last security-relevant change
+    private boolean isCurrentVersion(ParsedToken token, UserDetails userDetails) {
+        Long tokenVersion = token.getSecurityVersion();
+        if (tokenVersion == null || !(userDetails instanceof NhdclUserDetails nhdclUserDetails)) {
+            return true;
+        }
+
+        userSecurityVersions.record(nhdclUserDetails.getUserId(), nhdclUserDetails.getSecurityVersion());
+        return nhdclUserDetails.isEnabled() && tokenVersion == nhdclUserDetails.getSecurityVersion();
+    }
 }
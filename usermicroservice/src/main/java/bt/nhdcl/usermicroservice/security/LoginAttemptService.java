@@ -0,0 +1,191 @@
+package bt.nhdcl.usermicroservice.security;
+
+import bt.nhdcl.usermicroservice.config.MongoIndexManager;
+import bt.nhdcl.usermicroservice.entity.LoginLockout;
+import bt.nhdcl.usermicroservice.exception.LoginThrottledException;
+import bt.nhdcl.usermicroservice.repository.LoginLockoutRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts failed logins per email and per client IP and rejects further attempts with
+ * an exponentially growing delay, up to a temporary lockout. The check runs before any
+ * database or hashing work, so a credential-stuffing burst costs almost nothing.
+ *
+ * Counters live in a ConcurrentHashMap, whose compute() locks only the bin of the key
+ * being updated. Lockouts can optionally be written to MongoDB so every instance honours them.
+ */
+@Service
+public class LoginAttemptService {
+
+    private final int freeAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final int lockoutThreshold;
+    private final int ipLockoutThreshold;
+    private final long lockoutDuration;
+    private final int maxTrackedKeys;
+    private final boolean persistLockouts;
+    private final LoginLockoutRepository loginLockoutRepository;
+    private final MongoIndexManager mongoIndexManager;
+
+    private final Map<String, Attempts> attempts = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LoginAttemptService(@Value("${security.login.free-attempts:3}") int freeAttempts,
+            @Value("${security.login.base-delay-ms:1000}") long baseDelay,
+            @Value("${security.login.max-delay-ms:300000}") long maxDelay,
+            @Value("${security.login.lockout-threshold:10}") int lockoutThreshold,
+            @Value("${security.login.ip-lockout-threshold:100}") int ipLockoutThreshold,
+            @Value("${security.login.lockout-duration-ms:900000}") long lockoutDuration,
+            @Value("${security.login.max-tracked-keys:100000}") int maxTrackedKeys,
+            @Value("${security.login.persist-lockouts:false}") boolean persistLockouts,
+            LoginLockoutRepository loginLockoutRepository, MongoIndexManager mongoIndexManager) {
+        this.freeAttempts = freeAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.lockoutThreshold = lockoutThreshold;
+        this.ipLockoutThreshold = ipLockoutThreshold;
+        this.lockoutDuration = lockoutDuration;
+        this.maxTrackedKeys = maxTrackedKeys;
+        this.persistLockouts = persistLockouts;
+        this.loginLockoutRepository = loginLockoutRepository;
+        this.mongoIndexManager = mongoIndexManager;
+    }
+
+    // Throws LoginThrottledException if either the email or the client IP is currently blocked
+    public void checkAllowed(String email, String clientIp) {
+        long now = System.currentTimeMillis();
+        long blockedUntil = Math.max(blockedUntil(emailKey(email), now), blockedUntil(ipKey(clientIp), now));
+        if (blockedUntil > now) {
+            long retryAfterSeconds = (blockedUntil - now + 999) / 1000;
+            throw new LoginThrottledException("Too many failed login attempts. Try again in "
+                    + retryAfterSeconds + " seconds.", retryAfterSeconds);
+        }
+    }
+
+    public void recordFailure(String email, String clientIp) {
+        long now = System.currentTimeMillis();
+        if (attempts.size() >= maxTrackedKeys) {
+            cleanUp();
+            evictOldest(now);
+        }
+        recordFailure(emailKey(email), freeAttempts, lockoutThreshold, now);
+        // A shared IP (NAT, proxy) gets far more room than a single account
+        recordFailure(ipKey(clientIp), ipLockoutThreshold / 2, ipLockoutThreshold, now);
+    }
+
+    // A correct password clears the email's history; the IP counter is left to expire
+    public void recordSuccess(String email) {
+        attempts.remove(emailKey(email));
+    }
+
+    public int trackedKeys() {
+        return attempts.size();
+    }
+
+    @Scheduled(fixedDelayString = "${security.login.cleanup-interval-ms:60000}")
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        attempts.values().removeIf(entry -> entry.blockedUntil <= now && entry.lastFailure + lockoutDuration <= now);
+    }
+
+    // Still full after dropping expired counters: trim to 90% of the cap, dropping the least recent
+    // failures first and active lockouts last, so the map stays bounded whatever the traffic
+    private void evictOldest(long now) {
+        int excess = attempts.size() - (maxTrackedKeys - Math.max(1, maxTrackedKeys / 10));
+        if (excess <= 0) {
+            return;
+        }
+        attempts.entrySet().stream()
+                .sorted(Comparator.comparing((Map.Entry<String, Attempts> entry) -> entry.getValue().blockedUntil > now)
+                        .thenComparingLong(entry -> entry.getValue().lastFailure))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(attempts::remove);
+    }
+
+    // Picks up lockouts recorded by other instances
+    @Scheduled(fixedDelayString = "${security.login.sync-interval-ms:15000}",
+            initialDelayString = "${security.login.sync-interval-ms:15000}")
+    public void syncLockouts() {
+        if (!persistLockouts) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            for (LoginLockout lockout : loginLockoutRepository.findByLockedUntilAfter(new Date(now))) {
+                long lockedUntil = lockout.getLockedUntil().getTime();
+                attempts.merge(lockout.getKey(), new Attempts(lockoutThreshold, now, lockedUntil),
+                        (local, shared) -> local.blockedUntil >= shared.blockedUntil ? local : shared);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Failed to sync login lockouts: " + e.getMessage());
+        }
+    }
+
+    private void recordFailure(String key, int free, int threshold, long now) {
+        Attempts updated = attempts.compute(key, (k, previous) -> {
+            int failures = previous == null || previous.lastFailure + lockoutDuration <= now
+                    ? 1
+                    : previous.failures + 1;
+
+            long blockedUntil = 0;
+            if (failures >= threshold) {
+                blockedUntil = now + lockoutDuration;
+            } else if (failures > free) {
+                int doublings = Math.min(30, failures - free - 1);
+                blockedUntil = now + Math.min(maxDelay, baseDelay << doublings);
+            }
+            return new Attempts(failures, now, blockedUntil);
+        });
+
+        if (persistLockouts && updated.failures == threshold) {
+            persistLockout(key, updated.blockedUntil);
+        }
+    }
+
+    private void persistLockout(String key, long lockedUntil) {
+        try {
+            mongoIndexManager.ensureIndexes(LoginLockout.class);
+            loginLockoutRepository.save(new LoginLockout(key, new Date(lockedUntil)));
+        } catch (RuntimeException e) {
+            System.err.println("Failed to persist login lockout: " + e.getMessage());
+        }
+    }
+
+    private long blockedUntil(String key, long now) {
+        Attempts entry = attempts.get(key);
+        return entry != null && entry.blockedUntil > now ? entry.blockedUntil : 0;
+    }
+
+    private static String emailKey(String email) {
+        return "email:" + (email == null ? "" : email.trim().toLowerCase(Locale.ROOT));
+    }
+
+    private static String ipKey(String clientIp) {
+        return "ip:" + (clientIp == null ? "unknown" : clientIp);
+    }
+
+    private static final class Attempts {
+        private final int failures;
+        private final long lastFailure;
+        private final long blockedUntil;
+
+        private Attempts(int failures, long lastFailure, long blockedUntil) {
+            this.failures = failures;
+            this.lastFailure = lastFailure;
+            this.blockedUntil = blockedUntil;
+        }
+    }
+}
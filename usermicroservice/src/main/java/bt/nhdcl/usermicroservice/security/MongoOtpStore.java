@@ -0,0 +1,88 @@
+package bt.nhdcl.usermicroservice.security;
+
+import bt.nhdcl.usermicroservice.config.MongoIndexManager;
+import bt.nhdcl.usermicroservice.entity.OtpEntry;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+
+/**
+ * OTP store shared by every instance through the "otps" collection, so the OTP sent by
+ * one node can be verified on another without sticky routing. A TTL index removes
+ * expired OTPs, and a successful reset deletes the OTP with a single find-and-remove.
+ */
+@Component
+@ConditionalOnProperty(name = "otp.store", havingValue = "mongo")
+public class MongoOtpStore implements OtpStore {
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoIndexManager mongoIndexManager;
+
+    public MongoOtpStore(MongoTemplate mongoTemplate, MongoIndexManager mongoIndexManager) {
+        this.mongoTemplate = mongoTemplate;
+        this.mongoIndexManager = mongoIndexManager;
+    }
+
+    @Override
+    public boolean put(String email, OtpDetails otpDetails) {
+        mongoIndexManager.ensureIndexes(OtpEntry.class);
+        // Replaces any earlier OTP for the email, resetting its failed attempts
+        mongoTemplate.save(new OtpEntry(email, otpDetails.getCode(), new Date(otpDetails.getExpiryTime())));
+        return true;
+    }
+
+    @Override
+    public OtpDetails get(String email) {
+        OtpEntry entry = mongoTemplate.findById(email, OtpEntry.class);
+        // The TTL monitor only runs once a minute, so check the expiry here as well
+        if (entry == null || entry.getExpiresAt().getTime() < System.currentTimeMillis()) {
+            return null;
+        }
+        return new OtpDetails(entry.getCode(), entry.getFailedAttempts(), entry.getExpiresAt().getTime());
+    }
+
+    @Override
+    public OtpCheck check(String email, String otp, int maxAttempts, boolean consume) {
+        int code = OtpDetails.parseCode(otp);
+        Date now = new Date();
+
+        // A wrong guess is counted by the same operation that compares it, and only while attempts remain
+        OtpEntry counted = mongoTemplate.findAndModify(new Query(live(email, maxAttempts, now).and("code").ne(code)),
+                new Update().inc("failedAttempts", 1), FindAndModifyOptions.options().returnNew(true),
+                OtpEntry.class);
+        if (counted != null) {
+            if (counted.getFailedAttempts() < maxAttempts) {
+                return OtpCheck.MISMATCHED;
+            }
+            // Leaves alone an OTP that was reissued in the meantime
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(email).and("failedAttempts").gte(maxAttempts)),
+                    OtpEntry.class);
+            return OtpCheck.EXHAUSTED;
+        }
+
+        // Nothing was counted, so either the guess matches or there is no OTP with attempts left
+        Query matching = new Query(live(email, maxAttempts, now).and("code").is(code));
+        boolean matched = consume
+                ? mongoTemplate.findAndRemove(matching, OtpEntry.class) != null
+                : mongoTemplate.exists(matching, OtpEntry.class);
+        return matched ? OtpCheck.MATCHED : OtpCheck.NONE;
+    }
+
+    private static Criteria live(String email, int maxAttempts, Date now) {
+        return Criteria.where("_id").is(email)
+                .and("expiresAt").gte(now)
+                .and("failedAttempts").lt(maxAttempts);
+    }
+
+    @Override
+    public void remove(String email) {
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(email)), OtpEntry.class);
+    }
+}
@@ -4,14 +4,14 @@ import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Configuration
 @EnableWebSecurity
@@ -23,9 +23,29 @@ public class NhdclSecurityConfig {
     @Autowired
     private JwtRequestFilter jwtRequestFilter;
 
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    @Value("${password.hashing.algorithm:bcrypt}")
+    private String hashingAlgorithm;
+
+    @Value("${password.hashing.bcrypt-cost:10}")
+    private int bcryptCost;
+
+    @Value("${password.hashing.threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int hashingThreads;
+
+    @Value("${password.hashing.queue-capacity:64}")
+    private int hashingQueueCapacity;
+
+    @Value("${password.hashing.timeout-ms:5000}")
+    private long hashingTimeoutMillis;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Hashing runs on its own bounded pool rather than on request threads
+    @Bean(destroyMethod = "shutdown")
+    public PasswordHashingService passwordEncoder() {
+        return new PasswordHashingService(hashingAlgorithm, bcryptCost, hashingThreads, hashingQueueCapacity,
+                hashingTimeoutMillis, meterRegistry);
     }
 
     @Bean
@@ -46,11 +66,16 @@ public class NhdclSecurityConfig {
                         .requestMatchers(HttpMethod.POST, "/api/auth/login").permitAll()
                         .requestMatchers(HttpMethod.POST, "/api/auth/logout").permitAll()
                         .requestMatchers(HttpMethod.POST, "/api/auth/keep-alive").permitAll()
+                        .requestMatchers(HttpMethod.POST, "/api/auth/refresh").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll()
 
                         // Allow all operations on Users for Admin only
                         .requestMatchers(HttpMethod.POST, "/api/users").permitAll()
+                        .requestMatchers(HttpMethod.POST, "/api/users/import").hasAnyAuthority("Super Admin","Admin")
                         .requestMatchers(HttpMethod.GET, "/api/users").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/users/email").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/users/export").hasAnyAuthority("Super Admin","Admin")
+                        .requestMatchers("/api/users/bulk/**").hasAnyAuthority("Super Admin","Admin")
                         .requestMatchers(HttpMethod.GET, "/api/users/{id}").permitAll()
                         .requestMatchers(HttpMethod.PUT, "/api/users/image").permitAll()
                         .requestMatchers(HttpMethod.DELETE, "/api/users/{id}").hasAnyAuthority("Super Admin","Admin")
@@ -1,7 +1,7 @@
 package bt.nhdcl.usermicroservice.security;
 
 import bt.nhdcl.usermicroservice.entity.User;
-import bt.nhdcl.usermicroservice.entity.Role; // Import the Role class
+import bt.nhdcl.usermicroservice.entity.RoleSnapshot;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -22,7 +22,7 @@ public class NhdclUserDetails implements UserDetails {
     public Collection<? extends GrantedAuthority> getAuthorities() {
         List<SimpleGrantedAuthority> authorities = new ArrayList<>();
 
-        Role role = user.getRole();
+        RoleSnapshot role = user.getRole();
 
         if (role != null) {
             authorities.add(new SimpleGrantedAuthority(role.getName()));
@@ -82,4 +82,13 @@ public class NhdclUserDetails implements UserDetails {
     public String getImage() {
         return user.getImage();
     }
+
+    public String getRoleName() {
+        RoleSnapshot role = user.getRole();
+        return role != null ? role.getName() : null;
+    }
+
+    public long getSecurityVersion() {
+        return user.getSecurityVersion();
+    }
 }
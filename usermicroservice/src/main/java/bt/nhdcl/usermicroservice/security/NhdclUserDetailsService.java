@@ -15,13 +15,20 @@ import java.util.List;
 public class NhdclUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository; // Use UserRepository for MongoDB
+    private final UserDetailsCache userDetailsCache;
 
-    public NhdclUserDetailsService(UserRepository userRepository) {
+    public NhdclUserDetailsService(UserRepository userRepository, UserDetailsCache userDetailsCache) {
         this.userRepository = userRepository;
+        this.userDetailsCache = userDetailsCache;
     }
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
+        // Served from the cache; UserServiceImpl invalidates it whenever a user's credentials or status change
+        return userDetailsCache.get(email, this::loadFromDatabase);
+    }
+
+    private NhdclUserDetails loadFromDatabase(String email) {
         // Fetch user by email from MongoDB
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + email));
@@ -0,0 +1,14 @@
+package bt.nhdcl.usermicroservice.security;
+
+/**
+ * Outcome of checking a guess against a pending OTP.
+ */
+public enum OtpCheck {
+    MATCHED,
+    // Wrong, and counted against the OTP
+    MISMATCHED,
+    // Wrong, and it used up the last attempt; the OTP has been removed
+    EXHAUSTED,
+    // No OTP, it has expired, or no attempts are left
+    NONE
+}
@@ -1,19 +1,67 @@
 package bt.nhdcl.usermicroservice.security;
 
-public class OtpDetails {
-    private final String otp;
+/**
+ * A pending one-time password. The six digits are kept as an int rather than a
+ * String, so an entry is a single small object with only primitive fields.
+ */
+public final class OtpDetails {
+    private final int code;
+    private final int failedAttempts;
     private final long expiryTime;
 
-    public OtpDetails(String otp, long expiryTime) {
-        this.otp = otp;
+    public OtpDetails(int code, long expiryTime) {
+        this(code, 0, expiryTime);
+    }
+
+    public OtpDetails(int code, int failedAttempts, long expiryTime) {
+        this.code = code;
+        this.failedAttempts = failedAttempts;
         this.expiryTime = expiryTime;
     }
 
+    public int getCode() {
+        return code;
+    }
+
+    // The code as sent to the user, zero-padded to six digits
     public String getOtp() {
-        return otp;
+        return String.format("%06d", code);
+    }
+
+    public int getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    public OtpDetails withFailedAttempt() {
+        return new OtpDetails(code, failedAttempts + 1, expiryTime);
     }
 
     public long getExpiryTime() {
         return expiryTime;
     }
+
+    public boolean isExpired(long now) {
+        return now > expiryTime;
+    }
+
+    public boolean matches(String otp) {
+        int presented = parseCode(otp);
+        return presented >= 0 && presented == code;
+    }
+
+    // Returns the code for exactly six digits, or -1 for anything else
+    public static int parseCode(String otp) {
+        if (otp == null || otp.length() != 6) {
+            return -1;
+        }
+        int code = 0;
+        for (int i = 0; i < otp.length(); i++) {
+            char c = otp.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            code = code * 10 + (c - '0');
+        }
+        return code;
+    }
 }
@@ -0,0 +1,20 @@
+package bt.nhdcl.usermicroservice.security;
+
+/**
+ * Pending one-time passwords, keyed by email. The implementation is chosen with
+ * {@code otp.store}: "memory" (default) or "mongo" for a store shared by all instances.
+ */
+public interface OtpStore {
+
+    // Stores the OTP, replacing any earlier one for the email; false when it could not be stored
+    boolean put(String email, OtpDetails otpDetails);
+
+    // Returns the OTP for the email, or null if there is none or it has expired
+    OtpDetails get(String email);
+
+    // Compares the guess and counts it when wrong in one atomic step, so concurrent guesses cannot get
+    // past maxAttempts. With consume a match removes the OTP, and only one caller sees MATCHED
+    OtpCheck check(String email, String otp, int maxAttempts, boolean consume);
+
+    void remove(String email);
+}
@@ -0,0 +1,110 @@
+package bt.nhdcl.usermicroservice.security;
+
+import bt.nhdcl.usermicroservice.exception.OtpThrottledException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits how often OTP emails are sent and how often an OTP can be guessed.
+ *
+ * Each email gets one OTP per cooldown period and each client IP a fixed number per
+ * window, so a script cannot use the forgot-password endpoints to flood the SMTP relay.
+ * Every rejection is counted in the otp.throttled metric, tagged with its reason.
+ */
+@Component
+public class OtpThrottle {
+
+    private final long emailCooldown;
+    private final int ipMaxSends;
+    private final long ipWindow;
+    private final int maxAttempts;
+
+    private final Map<String, Long> lastSendByEmail = new ConcurrentHashMap<>();
+    private final Map<String, SendWindow> sendsByIp = new ConcurrentHashMap<>();
+
+    private final Counter emailThrottled;
+    private final Counter ipThrottled;
+    private final Counter attemptsExceeded;
+
+    public OtpThrottle(@Value("${otp.resend-cooldown-ms:60000}") long emailCooldown,
+            @Value("${otp.ip-max-sends:20}") int ipMaxSends,
+            @Value("${otp.ip-window-ms:600000}") long ipWindow,
+            @Value("${otp.max-attempts:5}") int maxAttempts,
+            MeterRegistry meterRegistry) {
+        this.emailCooldown = emailCooldown;
+        this.ipMaxSends = ipMaxSends;
+        this.ipWindow = ipWindow;
+        this.maxAttempts = maxAttempts;
+        this.emailThrottled = meterRegistry.counter("otp.throttled", "reason", "email");
+        this.ipThrottled = meterRegistry.counter("otp.throttled", "reason", "ip");
+        this.attemptsExceeded = meterRegistry.counter("otp.throttled", "reason", "attempts");
+    }
+
+    // Reserves a send for the email and IP, or throws OtpThrottledException if either has used its allowance
+    public void acquireSend(String email, String clientIp) {
+        long now = System.currentTimeMillis();
+
+        String emailKey = email.trim().toLowerCase(Locale.ROOT);
+        long[] blockedUntil = new long[1];
+        lastSendByEmail.compute(emailKey, (key, previous) -> {
+            if (previous != null && emailCooldown > 0 && previous + emailCooldown > now) {
+                blockedUntil[0] = previous + emailCooldown;
+                return previous;
+            }
+            return now;
+        });
+        if (blockedUntil[0] > 0) {
+            emailThrottled.increment();
+            throw throttled(blockedUntil[0] - now);
+        }
+
+        SendWindow window = sendsByIp.compute(clientIp == null ? "unknown" : clientIp, (key, previous) ->
+                previous == null || previous.start + ipWindow <= now
+                        ? new SendWindow(now, 1)
+                        : new SendWindow(previous.start, previous.sends + 1));
+        if (window.sends > ipMaxSends) {
+            ipThrottled.increment();
+            throw throttled(window.start + ipWindow - now);
+        }
+    }
+
+    // Wrong guesses an OTP may receive before it is discarded
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void recordAttemptsExceeded() {
+        attemptsExceeded.increment();
+    }
+
+    @Scheduled(fixedDelayString = "${otp.sweep-interval-ms:30000}")
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        lastSendByEmail.values().removeIf(lastSend -> lastSend + emailCooldown <= now);
+        sendsByIp.values().removeIf(window -> window.start + ipWindow <= now);
+    }
+
+    private static OtpThrottledException throttled(long waitMillis) {
+        long retryAfterSeconds = Math.max(1, (waitMillis + 999) / 1000);
+        return new OtpThrottledException("Too many OTP requests. Try again in " + retryAfterSeconds + " seconds.",
+                retryAfterSeconds);
+    }
+
+    private static final class SendWindow {
+        private final long start;
+        private final int sends;
+
+        private SendWindow(long start, int sends) {
+            this.start = start;
+            this.sends = sends;
+        }
+    }
+}
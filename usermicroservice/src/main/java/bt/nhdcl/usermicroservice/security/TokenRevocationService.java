@@ -0,0 +1,200 @@
+package bt.nhdcl.usermicroservice.security;
+
+import bt.nhdcl.usermicroservice.config.MongoIndexManager;
+import bt.nhdcl.usermicroservice.entity.RevokedToken;
+import bt.nhdcl.usermicroservice.repository.RevokedTokenRepository;
+import bt.nhdcl.usermicroservice.service.JWTUtil;
+import bt.nhdcl.usermicroservice.service.ParsedToken;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks access tokens revoked before their expiry.
+ * MongoDB holds the authoritative list; each instance keeps a Bloom filter of revoked
+ * token IDs, so only tokens that hit the filter need an authoritative lookup, plus the
+ * small map of users whose every session was revoked. Both are loaded on the first
+ * check and then synced from MongoDB periodically so all instances converge.
+ *
+ * Security version bumps (disable, password or role change) travel the same way, so in
+ * stateless mode every instance, not just the one that made the change, rejects the
+ * user's older tokens once it has synced.
+ *
+ * A JWT's issued-at time has whole-second precision, so "revoked before" instants are
+ * kept in epoch seconds; a token issued in the same second as a logout-all stays valid.
+ */
+@Service
+public class TokenRevocationService {
+
+    private static final String USER_PREFIX = "user:";
+    private static final String VERSION_PREFIX = "sv:";
+
+    // Revocations written by other instances just before the last sync may carry an earlier timestamp
+    private static final long SYNC_SKEW = 5_000;
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final MongoTemplate mongoTemplate;
+    private final MongoIndexManager mongoIndexManager;
+    private final JWTUtil jwtUtil;
+    private final UserSecurityVersions userSecurityVersions;
+    private final int expectedRevocations;
+    private final long rebuildInterval;
+
+    private volatile BloomFilter revokedTokenIds;
+    // Epoch seconds, rounded down
+    private final Map<String, Long> revokedBefore = new ConcurrentHashMap<>();
+    private volatile long lastSync;
+    private volatile long lastRebuild;
+
+    @Autowired
+    public TokenRevocationService(RevokedTokenRepository revokedTokenRepository, MongoTemplate mongoTemplate,
+            MongoIndexManager mongoIndexManager, JWTUtil jwtUtil, UserSecurityVersions userSecurityVersions,
+            @Value("${jwt.revocation.expected-entries:100000}") int expectedRevocations,
+            @Value("${jwt.revocation.rebuild-interval-ms:3600000}") long rebuildInterval) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.mongoIndexManager = mongoIndexManager;
+        this.jwtUtil = jwtUtil;
+        this.userSecurityVersions = userSecurityVersions;
+        this.expectedRevocations = expectedRevocations;
+        this.rebuildInterval = rebuildInterval;
+        this.revokedTokenIds = new BloomFilter(expectedRevocations, 0.001);
+    }
+
+    public boolean isRevoked(ParsedToken token) {
+        ensureLoaded();
+        Long before = revokedBefore.get(token.getSubject());
+        if (before != null && token.getIssuedAt().getTime() / 1000 < before) {
+            return true;
+        }
+
+        String tokenId = token.getTokenId();
+        if (tokenId == null || !revokedTokenIds.mightContain(tokenId)) {
+            return false; // Fast path: almost every request ends here
+        }
+        return revokedTokenRepository.existsById(tokenId);
+    }
+
+    public void revoke(ParsedToken token) {
+        if (token.getTokenId() == null) {
+            return; // Issued before tokens carried an ID; it expires on its own
+        }
+        mongoIndexManager.ensureIndexes(RevokedToken.class);
+        revokedTokenRepository.save(new RevokedToken(token.getTokenId(), null, null, new Date(),
+                token.getExpiration()));
+        revokedTokenIds.add(token.getTokenId());
+    }
+
+    // Revokes every access token issued to the user so far
+    public void revokeAll(String subject) {
+        mongoIndexManager.ensureIndexes(RevokedToken.class);
+        long now = System.currentTimeMillis();
+        long nowSeconds = now / 1000;
+        revokedTokenRepository.save(new RevokedToken(USER_PREFIX + subject, subject, new Date(nowSeconds * 1000),
+                new Date(now), new Date(now + jwtUtil.getTokenExpiration())));
+        revokedBefore.merge(subject, nowSeconds, Math::max);
+    }
+
+    // Records the user's new security version here and shares it with the other instances
+    public void publishSecurityVersion(String userId, long version) {
+        if (userId != null) {
+            publishSecurityVersions(Map.of(userId, version));
+        }
+    }
+
+    // Bulk changes publish every bumped user in one unordered write
+    public void publishSecurityVersions(Map<String, Long> versions) {
+        if (versions.isEmpty()) {
+            return;
+        }
+        versions.forEach(userSecurityVersions::record);
+        try {
+            mongoIndexManager.ensureIndexes(RevokedToken.class);
+            long now = System.currentTimeMillis();
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RevokedToken.class);
+            versions.forEach((userId, version) ->
+                    // $max, so a slower writer cannot replace a newer version with an older one
+                    bulk.upsert(new Query(Criteria.where("_id").is(VERSION_PREFIX + userId)), new Update()
+                            .max("securityVersion", version)
+                            .set("userId", userId)
+                            .set("revokedAt", new Date(now))
+                            .set("expiresAt", new Date(now + jwtUtil.getTokenExpiration()))));
+            bulk.execute();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to publish security versions: " + e.getMessage());
+        }
+    }
+
+    // The user no longer exists, so none of its tokens are valid anywhere
+    public void publishUserDeleted(String userId) {
+        publishSecurityVersion(userId, UserSecurityVersions.REVOKED);
+    }
+
+    // Pulls revocations made by other instances; the filter is rebuilt now and then to drop expired entries
+    @Scheduled(fixedDelayString = "${jwt.revocation.sync-interval-ms:10000}",
+            initialDelayString = "${jwt.revocation.sync-interval-ms:10000}")
+    public void sync() {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - lastRebuild >= rebuildInterval) {
+                rebuild(now);
+            } else {
+                apply(revokedTokenRepository.findByRevokedAtAfter(new Date(lastSync - SYNC_SKEW)), revokedTokenIds);
+                lastSync = now;
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Failed to sync revoked tokens: " + e.getMessage());
+        }
+    }
+
+    // Revocations made before this instance started must apply from its first request, not its first sync.
+    // Loading fails closed: if MongoDB cannot be read the check throws rather than accepting the token
+    private void ensureLoaded() {
+        if (lastRebuild == 0) {
+            synchronized (this) {
+                if (lastRebuild == 0) {
+                    rebuild(System.currentTimeMillis());
+                }
+            }
+        }
+    }
+
+    private synchronized void rebuild(long now) {
+        BloomFilter rebuilt = new BloomFilter(expectedRevocations, 0.001);
+        List<RevokedToken> live = revokedTokenRepository.findByExpiresAtAfter(new Date(now));
+
+        revokedBefore.entrySet().removeIf(entry -> entry.getValue() * 1000 + jwtUtil.getTokenExpiration() < now);
+        apply(live, rebuilt);
+
+        revokedTokenIds = rebuilt;
+        lastSync = now;
+        lastRebuild = now;
+    }
+
+    private void apply(List<RevokedToken> revokedTokens, BloomFilter filter) {
+        for (RevokedToken revokedToken : revokedTokens) {
+            if (revokedToken.getUserId() != null) {
+                if (revokedToken.getSecurityVersion() != null) {
+                    userSecurityVersions.record(revokedToken.getUserId(), revokedToken.getSecurityVersion());
+                }
+            } else if (revokedToken.getSubject() != null) {
+                revokedBefore.merge(revokedToken.getSubject(), revokedToken.getRevokedBefore().getTime() / 1000,
+                        Math::max);
+            } else {
+                filter.add(revokedToken.getId());
+            }
+        }
+    }
+}
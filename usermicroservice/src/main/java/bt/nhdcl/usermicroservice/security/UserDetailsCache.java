@@ -0,0 +1,147 @@
+package bt.nhdcl.usermicroservice.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of {@link NhdclUserDetails} keyed by email.
+ *
+ * Entries live for a fixed TTL and are invalidated by the user mutations that affect
+ * authentication. Concurrent misses for the same email share a single database load.
+ */
+@Component
+public class UserDetailsCache {
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Lets mutations that only know the userId find the cached email
+    private final Map<String, String> emailsByUserId = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public UserDetailsCache(@Value("${security.user-cache.ttl-ms:60000}") long ttlMillis,
+            @Value("${security.user-cache.max-entries:10000}") int maxEntries,
+            MeterRegistry meterRegistry) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.hits = meterRegistry.counter("user.details.cache", "result", "hit");
+        this.misses = meterRegistry.counter("user.details.cache", "result", "miss");
+        Gauge.builder("user.details.cache.size", entries, Map::size).register(meterRegistry);
+    }
+
+    // Returns the cached details, or loads them once for all concurrent callers
+    public NhdclUserDetails get(String email, Function<String, NhdclUserDetails> loader) {
+        if (email == null || maxEntries <= 0 || ttlMillis <= 0) {
+            misses.increment();
+            return loader.apply(email);
+        }
+
+        // Keyed by the exact email, matching the repository lookup
+        String key = email;
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt > now) {
+            hits.increment();
+            return join(entry.details);
+        }
+
+        if (entries.size() >= maxEntries) {
+            evict();
+        }
+
+        Entry created = new Entry(new CompletableFuture<>(), now + ttlMillis);
+        Entry current = entries.compute(key, (k, previous) ->
+                previous != null && previous.expiresAt > now ? previous : created);
+        if (current != created) {
+            hits.increment();
+            return join(current.details);
+        }
+
+        misses.increment();
+        try {
+            NhdclUserDetails details = loader.apply(email);
+            if (details.getUserId() != null) {
+                emailsByUserId.put(details.getUserId(), key);
+            }
+            created.details.complete(details);
+            return details;
+        } catch (RuntimeException e) {
+            // Failures (e.g. unknown email) are not cached; waiting callers see the same exception
+            entries.remove(key, created);
+            created.details.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public void invalidate(String email) {
+        if (email != null) {
+            entries.remove(email);
+        }
+    }
+
+    public void invalidateUser(String userId) {
+        if (userId == null) {
+            return;
+        }
+        String key = emailsByUserId.remove(userId);
+        if (key != null) {
+            entries.remove(key);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        emailsByUserId.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Drop expired entries first; if the cache is still full, trim it down to 90% of its capacity
+    private void evict() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+
+        int target = maxEntries - Math.max(1, maxEntries / 10);
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > target && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+        emailsByUserId.values().removeIf(key -> !entries.containsKey(key));
+    }
+
+    private static NhdclUserDetails join(CompletableFuture<NhdclUserDetails> details) {
+        try {
+            return details.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<NhdclUserDetails> details;
+        private final long expiresAt;
+
+        private Entry(CompletableFuture<NhdclUserDetails> details, long expiresAt) {
+            this.details = details;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package bt.nhdcl.usermicroservice.security;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest security version known to this instance for each user.
+ * Used by the stateless authentication mode to decide when the claims of a token
+ * can no longer be trusted and the user has to be re-read from MongoDB.
+ */
+@Component
+public class UserSecurityVersions {
+
+    // Marks a user that no longer exists, so every token issued to it is stale
+    public static final long REVOKED = Long.MAX_VALUE;
+
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    public void record(String userId, long version) {
+        if (userId != null) {
+            versions.merge(userId, version, Math::max);
+        }
+    }
+
+    public void revoke(String userId) {
+        record(userId, REVOKED);
+    }
+
+    // A token is stale when this instance has seen a newer version than the one it was issued with
+    public boolean isStale(String userId, long tokenVersion) {
+        Long known = versions.get(userId);
+        return known != null && tokenVersion < known;
+    }
+}
@@ -1,49 +1,90 @@
 package bt.nhdcl.usermicroservice.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Service;
 import bt.nhdcl.usermicroservice.entity.User;
 import bt.nhdcl.usermicroservice.repository.UserRepository;
+import bt.nhdcl.usermicroservice.security.LoginAttemptService;
+import bt.nhdcl.usermicroservice.security.NhdclUserDetails;
+import bt.nhdcl.usermicroservice.security.PasswordHashingService;
+
+import java.util.Optional;
 
 @Service
 public class AuthServiceImpl implements AuthService {
 
-    private final AuthenticationManager authenticationManager;
-    private final UserDetailsService userDetailsService;
     private final UserRepository userRepository;
+    private final PasswordHashingService passwordEncoder;
+    private final MongoTemplate mongoTemplate;
+    private final LoginAttemptService loginAttemptService;
+
+    // Hash checked against when the email is unknown, so that case costs as much as a wrong password
+    private volatile String unknownUserHash;
 
     @Autowired
-    public AuthServiceImpl(AuthenticationManager authenticationManager, UserDetailsService userDetailsService,
-            UserRepository userRepository) {
-        this.authenticationManager = authenticationManager;
-        this.userDetailsService = userDetailsService;
+    public AuthServiceImpl(UserRepository userRepository, PasswordHashingService passwordEncoder,
+            MongoTemplate mongoTemplate, LoginAttemptService loginAttemptService) {
         this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.mongoTemplate = mongoTemplate;
+        this.loginAttemptService = loginAttemptService;
     }
 
     @Override
-    public UserDetails login(String email, String password) {
-        try {
-            // Authenticate user
-            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(email, password));
+    public UserDetails login(String email, String password, String clientIp) {
+        if (email == null || password == null) {
+            throw new RuntimeException("Invalid email or password");
+        }
 
-            // Load user details
-            User user = userRepository.findByEmail(email).orElseThrow(() -> new RuntimeException("User not found"));
+        // Reject throttled attempts before any database or hashing work
+        loginAttemptService.checkAllowed(email, clientIp);
 
-            // Check if user is enabled (active)
-            if (!user.isEnabled()) {
-                throw new RuntimeException("User is disabled or deleted");
-            }
+        // Load the user once; the same document is used for the password check,
+        // the enabled check and the response
+        Optional<User> userOptional = userRepository.findCredentialsByEmail(email);
+        if (userOptional.isEmpty()) {
+            passwordEncoder.matches(password, unknownUserHash());
+            loginAttemptService.recordFailure(email, clientIp);
+            throw new RuntimeException("Invalid email or password");
+        }
 
-            // If user is active, return user details
-            return userDetailsService.loadUserByUsername(email);
+        User user = userOptional.get();
 
-        } catch (BadCredentialsException e) {
+        // Authenticate user
+        if (user.getPassword() == null || !passwordEncoder.matches(password, user.getPassword())) {
+            loginAttemptService.recordFailure(email, clientIp);
             throw new RuntimeException("Invalid email or password");
         }
+        loginAttemptService.recordSuccess(email);
+
+        // Check if user is enabled (active)
+        if (!user.isEnabled()) {
+            throw new RuntimeException("User is disabled or deleted");
+        }
+
+        // Bring hashes made with an older algorithm or cost up to the current settings
+        if (passwordEncoder.upgradeEncoding(user.getPassword())) {
+            String previousHash = user.getPassword();
+            passwordEncoder.rehashInBackground(password, newHash -> mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(user.getUserId()).and("password").is(previousHash)),
+                    new Update().set("password", newHash), User.class));
+        }
+
+        // If user is active, return user details
+        return new NhdclUserDetails(user);
+    }
+
+    private String unknownUserHash() {
+        String hash = unknownUserHash;
+        if (hash == null) {
+            hash = passwordEncoder.encode("unknown-user");
+            unknownUserHash = hash;
+        }
+        return hash;
     }
 }
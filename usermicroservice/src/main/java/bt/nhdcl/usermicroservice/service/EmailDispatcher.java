@@ -0,0 +1,178 @@
+package bt.nhdcl.usermicroservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends emails in the background so request threads never wait on SMTP.
+ *
+ * Messages go into a bounded queue drained by a fixed pool of workers. A failed delivery
+ * is retried with exponential backoff; once the attempts are used up the message is
+ * written to the dead-letter log. When the queue is full, new messages are refused
+ * instead of blocking the caller.
+ */
+@Component
+@ConditionalOnProperty(name = "email.queue.type", havingValue = "memory", matchIfMissing = true)
+public class EmailDispatcher implements EmailQueue {
+
+    private final MailDelivery mailDelivery;
+    private final BlockingQueue<EmailMessage> queue;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryScheduler;
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final AtomicInteger pendingRetries = new AtomicInteger();
+    private volatile boolean running = true;
+
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter rejected;
+    private final Counter deadLettered;
+
+    @Autowired
+    public EmailDispatcher(MailDelivery mailDelivery,
+            @Value("${email.queue.capacity:1000}") int capacity,
+            @Value("${email.workers:2}") int workerCount,
+            @Value("${email.max-attempts:5}") int maxAttempts,
+            @Value("${email.retry.initial-backoff-ms:2000}") long initialBackoff,
+            @Value("${email.retry.max-backoff-ms:60000}") long maxBackoff,
+            MeterRegistry meterRegistry) {
+        this.mailDelivery = mailDelivery;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+
+        this.sent = meterRegistry.counter("email.sent");
+        this.retried = meterRegistry.counter("email.retried");
+        this.rejected = meterRegistry.counter("email.rejected");
+        this.deadLettered = meterRegistry.counter("email.dead.letters");
+        Gauge.builder("email.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        Gauge.builder("email.retry.pending", pendingRetries, AtomicInteger::get).register(meterRegistry);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "email-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::drain);
+        }
+    }
+
+    // Queues the message and returns at once; false when the queue is full
+    @Override
+    public boolean enqueue(EmailMessage message) {
+        if (!running || !queue.offer(message)) {
+            rejected.increment();
+            System.err.println("Email queue is full, dropping email to " + message.getTo());
+            return false;
+        }
+        return true;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        retryScheduler.shutdownNow();
+        workers.shutdown();
+        try {
+            // Give the workers a moment to send what is already queued
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            EmailMessage message;
+            try {
+                message = queue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (message != null) {
+                deliver(message.withAttempt());
+            }
+        }
+    }
+
+    private void deliver(EmailMessage message) {
+        try {
+            mailDelivery.deliver(message);
+            sent.increment();
+        } catch (Exception e) {
+            if (message.getAttempts() >= maxAttempts || !running) {
+                deadLetter(message, e);
+            } else {
+                scheduleRetry(message, e);
+            }
+        }
+    }
+
+    // Waits outside the worker pool, so a slow relay does not tie up the workers
+    private void scheduleRetry(EmailMessage message, Exception cause) {
+        long delay = retryDelay(message.getAttempts(), initialBackoff, maxBackoff);
+        System.err.println("Failed to send email to " + message.getTo() + " (attempt " + message.getAttempts()
+                + "), retrying in " + delay + " ms: " + cause.getMessage());
+        retried.increment();
+        pendingRetries.incrementAndGet();
+        try {
+            retryScheduler.schedule(() -> {
+                pendingRetries.decrementAndGet();
+                if (!queue.offer(message)) {
+                    deadLetter(message, cause);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            pendingRetries.decrementAndGet();
+            deadLetter(message, cause);
+        }
+    }
+
+    private void deadLetter(EmailMessage message, Exception cause) {
+        deadLettered.increment();
+        logDeadLetter(message.getTo(), message.getSubject(), message.getAttempts(), cause);
+    }
+
+    // Exponential backoff with up to 10% jitter, so retries from many messages do not line up
+    static long retryDelay(int attempts, long initialBackoff, long maxBackoff) {
+        long backoff = Math.min(maxBackoff, initialBackoff << Math.min(20, attempts - 1));
+        return backoff + ThreadLocalRandom.current().nextLong(backoff / 10 + 1);
+    }
+
+    static void logDeadLetter(String to, String subject, int attempts, Exception cause) {
+        System.err.println("DEAD LETTER: email to " + to + " with subject \"" + subject
+                + "\" dropped after " + attempts + " attempts: " + cause.getMessage());
+    }
+}
@@ -0,0 +1,44 @@
+package bt.nhdcl.usermicroservice.service;
+
+/**
+ * An outbound HTML email waiting to be delivered, with the number of delivery
+ * attempts made so far.
+ */
+public final class EmailMessage {
+
+    private final String to;
+    private final String subject;
+    private final String htmlContent;
+    private final int attempts;
+
+    public EmailMessage(String to, String subject, String htmlContent) {
+        this(to, subject, htmlContent, 0);
+    }
+
+    private EmailMessage(String to, String subject, String htmlContent, int attempts) {
+        this.to = to;
+        this.subject = subject;
+        this.htmlContent = htmlContent;
+        this.attempts = attempts;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getHtmlContent() {
+        return htmlContent;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public EmailMessage withAttempt() {
+        return new EmailMessage(to, subject, htmlContent, attempts + 1);
+    }
+}
@@ -0,0 +1,12 @@
+package bt.nhdcl.usermicroservice.service;
+
+/**
+ * Accepts outbound emails for background delivery. Chosen with {@code email.queue.type}:
+ * "memory" (default) keeps them in this instance, "outbox" stores them in MongoDB so
+ * they survive a restart and can be sent by any instance.
+ */
+public interface EmailQueue {
+
+    // Returns once the message is accepted; false if it could not be queued
+    boolean enqueue(EmailMessage message);
+}
@@ -1,13 +1,27 @@
 package bt.nhdcl.usermicroservice.service;
 
+import java.util.Locale;
+import java.util.Map;
+
 public interface EmailService {
     /**
-     * Sends an email to the specified recipient.
+     * Queues an email to the specified recipient; it is sent in the background.
      * 
      * @param to      the email address of the recipient
      * @param subject the subject of the email
      * @param text    the body content of the email
-     * @return true if the email was sent successfully, false otherwise
+     * @return true if the email was queued, false if the queue is full
      */
     boolean sendEmail(String to, String subject, String text);
+
+    /**
+     * Renders a template from {@code templates/email} and queues the result.
+     * 
+     * @param to         the email address of the recipient
+     * @param templateId the template file name without locale suffix or extension
+     * @param model      the values for the template's parameters; they are HTML-escaped
+     * @param locale     the preferred language; falls back to the default template
+     * @return true if the email was queued, false if the queue is full
+     */
+    boolean sendTemplate(String to, String templateId, Map<String, ?> model, Locale locale);
 }
\ No newline at end of file
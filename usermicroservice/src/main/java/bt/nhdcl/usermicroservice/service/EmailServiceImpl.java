@@ -1,42 +1,32 @@
 package bt.nhdcl.usermicroservice.service;
 
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.InternetAddress;
-import jakarta.mail.internet.MimeMessage;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import java.util.Locale;
+import java.util.Map;
+
 @Service
 public class EmailServiceImpl implements EmailService {
 
-    private final JavaMailSender mailSender;
-
-    @Value("${spring.mail.username}")
-    private String fromEmail;
+    private final EmailQueue emailQueue;
+    private final EmailTemplateEngine emailTemplateEngine;
 
     @Autowired
-    public EmailServiceImpl(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
+    public EmailServiceImpl(EmailQueue emailQueue, EmailTemplateEngine emailTemplateEngine) {
+        this.emailQueue = emailQueue;
+        this.emailTemplateEngine = emailTemplateEngine;
     }
 
     @Override
     public boolean sendEmail(String to, String subject, String htmlContent) {
-        try {
-            MimeMessage message = mailSender.createMimeMessage();
-            message.setFrom(new InternetAddress(fromEmail));
-            message.setRecipients(MimeMessage.RecipientType.TO, InternetAddress.parse(to));
-            message.setSubject(subject, "UTF-8");
-            message.setContent(htmlContent, "text/html; charset=utf-8");
+        // Delivered in the background; failures are retried by the queue
+        return emailQueue.enqueue(new EmailMessage(to, subject, htmlContent));
+    }
 
-            mailSender.send(message);
-            return true;
-        } catch (MessagingException e) {
-            // Log exception
-            System.err.println("Failed to send email: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        }
+    @Override
+    public boolean sendTemplate(String to, String templateId, Map<String, ?> model, Locale locale) {
+        EmailTemplateEngine.RenderedEmail email = emailTemplateEngine.render(templateId, model, locale);
+        return sendEmail(to, email.getSubject(), email.getHtml());
     }
 }
@@ -0,0 +1,210 @@
+package bt.nhdcl.usermicroservice.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders the HTML emails under {@code templates/email}.
+ *
+ * Every template is read and split into literal text and {{parameter}} slots once at
+ * startup, so rendering is a single pass that appends into a per-thread buffer. Parameter
+ * values are HTML-escaped. A template file is named {@code <id>.html}, with localised
+ * variants named {@code <id>_<language>.html} or {@code <id>_<language>_<COUNTRY>.html};
+ * its first line may be a {@code <!--subject: ...-->} comment holding the subject.
+ */
+@Component
+public class EmailTemplateEngine {
+
+    private static final String SUBJECT_PREFIX = "<!--subject:";
+    private static final String SUBJECT_SUFFIX = "-->";
+    // Buffers that grew past this are not kept for the next render
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private final Map<String, CompiledTemplate> templates;
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+    @Autowired
+    public EmailTemplateEngine(@Value("${email.templates.location:classpath*:templates/email/*.html}") String location)
+            throws IOException {
+        this(new PathMatchingResourcePatternResolver().getResources(location));
+    }
+
+    EmailTemplateEngine(Resource[] resources) throws IOException {
+        Map<String, CompiledTemplate> compiled = new HashMap<>();
+        for (Resource resource : resources) {
+            String filename = resource.getFilename();
+            if (filename == null || !filename.endsWith(".html")) {
+                continue;
+            }
+            try (InputStream in = resource.getInputStream()) {
+                String source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                String key = filename.substring(0, filename.length() - ".html".length());
+                compiled.put(key, CompiledTemplate.compile(key, source));
+            }
+        }
+        this.templates = Map.copyOf(compiled);
+    }
+
+    public boolean hasTemplate(String templateId) {
+        return templates.containsKey(templateId);
+    }
+
+    // Renders the closest match for the locale: "id_dz_BT", then "id_dz", then "id"
+    public RenderedEmail render(String templateId, Map<String, ?> model, Locale locale) {
+        CompiledTemplate template = resolve(templateId, locale);
+        StringBuilder buffer = buffers.get();
+        try {
+            buffer.setLength(0);
+            template.subject.appendTo(buffer, model, false);
+            String subject = buffer.toString();
+
+            buffer.setLength(0);
+            template.body.appendTo(buffer, model, true);
+            return new RenderedEmail(subject, buffer.toString());
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+                buffers.remove();
+            }
+        }
+    }
+
+    private CompiledTemplate resolve(String templateId, Locale locale) {
+        if (locale != null && !locale.getLanguage().isEmpty()) {
+            if (!locale.getCountry().isEmpty()) {
+                CompiledTemplate template = templates.get(templateId + "_" + locale.getLanguage() + "_"
+                        + locale.getCountry());
+                if (template != null) {
+                    return template;
+                }
+            }
+            CompiledTemplate template = templates.get(templateId + "_" + locale.getLanguage());
+            if (template != null) {
+                return template;
+            }
+        }
+        CompiledTemplate template = templates.get(templateId);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown email template: " + templateId);
+        }
+        return template;
+    }
+
+    static void escapeHtml(CharSequence value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    public static final class RenderedEmail {
+        private final String subject;
+        private final String html;
+
+        private RenderedEmail(String subject, String html) {
+            this.subject = subject;
+            this.html = html;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getHtml() {
+            return html;
+        }
+    }
+
+    private static final class CompiledTemplate {
+        private final Segments subject;
+        private final Segments body;
+
+        private CompiledTemplate(Segments subject, Segments body) {
+            this.subject = subject;
+            this.body = body;
+        }
+
+        private static CompiledTemplate compile(String name, String source) {
+            String subject = "";
+            String body = source;
+            if (source.startsWith(SUBJECT_PREFIX)) {
+                int end = source.indexOf(SUBJECT_SUFFIX);
+                if (end < 0) {
+                    throw new IllegalStateException("Unterminated subject comment in email template " + name);
+                }
+                subject = source.substring(SUBJECT_PREFIX.length(), end).trim();
+                body = source.substring(end + SUBJECT_SUFFIX.length()).stripLeading();
+            }
+            return new CompiledTemplate(Segments.parse(name, subject), Segments.parse(name, body));
+        }
+    }
+
+    // Alternating literal text and parameter names; literals[i] is followed by parameters[i]
+    private static final class Segments {
+        private final String template;
+        private final String[] literals;
+        private final String[] parameters;
+
+        private Segments(String template, String[] literals, String[] parameters) {
+            this.template = template;
+            this.literals = literals;
+            this.parameters = parameters;
+        }
+
+        private static Segments parse(String template, String source) {
+            List<String> literals = new ArrayList<>();
+            List<String> parameters = new ArrayList<>();
+            int position = 0;
+            while (true) {
+                int open = source.indexOf("{{", position);
+                if (open < 0) {
+                    break;
+                }
+                int close = source.indexOf("}}", open + 2);
+                if (close < 0) {
+                    throw new IllegalStateException("Unterminated parameter in email template " + template);
+                }
+                literals.add(source.substring(position, open));
+                parameters.add(source.substring(open + 2, close).trim());
+                position = close + 2;
+            }
+            literals.add(source.substring(position));
+            return new Segments(template, literals.toArray(new String[0]), parameters.toArray(new String[0]));
+        }
+
+        private void appendTo(StringBuilder out, Map<String, ?> model, boolean html) {
+            for (int i = 0; i < parameters.length; i++) {
+                out.append(literals[i]);
+                Object value = model.get(parameters[i]);
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing parameter '" + parameters[i]
+                            + "' for email template " + template);
+                }
+                if (html) {
+                    escapeHtml(value.toString(), out);
+                } else {
+                    out.append(value);
+                }
+            }
+            out.append(literals[literals.length - 1]);
+        }
+    }
+}
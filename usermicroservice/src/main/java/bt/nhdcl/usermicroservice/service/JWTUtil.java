@@ -1,85 +1,172 @@
 package bt.nhdcl.usermicroservice.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
 
+import bt.nhdcl.usermicroservice.security.NhdclUserDetails;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.UUID;
 import java.security.Key;
 
 @Service
 public class JWTUtil {
-    private String SECRET_KEY = "thisismysecret19897donottouctouchit8329373743hhdjssmma89202";
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String ROLE_CLAIM = "role";
+    public static final String ACADEMY_ID_CLAIM = "academyId";
+    public static final String DEPARTMENT_ID_CLAIM = "departmentId";
+    public static final String SECURITY_VERSION_CLAIM = "sv";
 
-    public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
-    }
+    private final long TOKEN_EXPIRATION = 1800000;
 
-    public String extractEmailFromToken(String token) {
-        return extractClaim(token, claims -> claims.get("email", String.class));
+    // Built once: the HMAC key and the parser are immutable and safe to share between threads
+    private final Key signingKey;
+    private final JwtParser jwtParser;
+    private final JwtKeyService jwtKeyService;
+    private final boolean asymmetricSigning;
+    // With RS256, HMAC tokens (no "kid") are only accepted before this time, in epoch millis
+    private final long hmacAcceptedUntil;
+
+    @Autowired
+    public JWTUtil(JwtKeyService jwtKeyService,
+            @Value("${jwt.signing.algorithm:HS256}") String signingAlgorithm,
+            @Value("${jwt.secret:}") String secret,
+            @Value("${jwt.signing.hmac-accepted-until:}") String hmacAcceptedUntil) {
+        this.jwtKeyService = jwtKeyService;
+        this.asymmetricSigning = JwtKeyService.ALGORITHM.equals(signingAlgorithm);
+        this.signingKey = secret.isBlank() ? null : getSigningKey(secret);
+        this.hmacAcceptedUntil = hmacCutoff(hmacAcceptedUntil);
+        if (!asymmetricSigning && signingKey == null) {
+            throw new IllegalStateException("jwt.secret must be set when jwt.signing.algorithm is HS256");
+        }
+
+        // Tokens with a "kid" header are verified against the published RSA keys,
+        // tokens without one were signed with the shared HMAC secret
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        String kid = header.getKeyId();
+                        if (kid == null) {
+                            if (asymmetricSigning && System.currentTimeMillis() >= JWTUtil.this.hmacAcceptedUntil) {
+                                throw new SignatureException("Token has no signing key id");
+                            }
+                            return signingKey;
+                        }
+                        Key publicKey = jwtKeyService.verificationKey(kid);
+                        if (publicKey == null) {
+                            throw new SignatureException("Unknown signing key: " + kid);
+                        }
+                        return publicKey;
+                    }
+                })
+                .build();
     }
 
-    public Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    // Verifies the signature and expiry once and returns every claim the service uses
+    public ParsedToken parse(String token) {
+        return ParsedToken.from(jwtParser.parseClaimsJws(token).getBody());
     }
 
-    public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+    public String extractUsername(String token) {
+        return parse(token).getSubject();
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    public String extractEmailFromToken(String token) {
+        return parse(token).getEmail();
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public Date extractExpiration(String token) {
+        return parse(token).getExpiration();
     }
 
-    private final long TOKEN_EXPIRATION = 1800000;
-
     public String generateToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("roles", userDetails.getAuthorities());
         claims.put("email", userDetails.getUsername()); // Store email as a claim
+
+        // Enough of the user to rebuild the principal without a database lookup
+        if (userDetails instanceof NhdclUserDetails nhdclUserDetails) {
+            claims.put(USER_ID_CLAIM, nhdclUserDetails.getUserId());
+            claims.put(ROLE_CLAIM, nhdclUserDetails.getRoleName());
+            claims.put(ACADEMY_ID_CLAIM, nhdclUserDetails.getAcademyId());
+            claims.put(DEPARTMENT_ID_CLAIM, nhdclUserDetails.getDepartmentId());
+            claims.put(SECURITY_VERSION_CLAIM, nhdclUserDetails.getSecurityVersion());
+        }
         return createToken(claims, userDetails.getUsername());
     }
 
     private String createToken(Map<String, Object> claims, String subject) {
-        return Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
                 .setClaims(claims)
+                .setId(UUID.randomUUID().toString()) // Lets a single token be revoked
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + TOKEN_EXPIRATION))
-                .signWith(getSigningKey())
-                .compact();
+                .setExpiration(new Date(System.currentTimeMillis() + TOKEN_EXPIRATION));
+
+        if (asymmetricSigning) {
+            // Sign with the current RSA key so other services can verify the token from the JWKS endpoint
+            JwtKeyService.LoadedKey key = jwtKeyService.currentSigningKey();
+            builder.setHeaderParam(JwsHeader.KEY_ID, key.getKid())
+                    .signWith(key.getPrivateKey(), SignatureAlgorithm.RS256);
+        } else {
+            builder.signWith(signingKey);
+        }
+        return builder.compact();
     }
 
-    private Key getSigningKey() {
-        // You should replace this with your own secret key
+    private Key getSigningKey(String secret) {
         // The secret should be at least 256 bits long for HS256
-        String secret = SECRET_KEY;
         byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length < 32) {
+            throw new IllegalStateException("jwt.secret must be at least 32 bytes long");
+        }
         return Keys.hmacShaKeyFor(keyBytes);
     }
 
+    // The HMAC migration window after switching to RS256 may last at most one token lifetime
+    private long hmacCutoff(String acceptedUntil) {
+        if (!asymmetricSigning || acceptedUntil.isBlank()) {
+            return 0;
+        }
+        if (signingKey == null) {
+            throw new IllegalStateException("jwt.signing.hmac-accepted-until needs jwt.secret");
+        }
+        long cutoff = Instant.parse(acceptedUntil).toEpochMilli();
+        if (cutoff > System.currentTimeMillis() + TOKEN_EXPIRATION) {
+            throw new IllegalStateException("jwt.signing.hmac-accepted-until may be at most "
+                    + TOKEN_EXPIRATION + " ms in the future");
+        }
+        return cutoff;
+    }
+
     public long getTokenExpiration() {
         return TOKEN_EXPIRATION;
     }
 
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return validateToken(parse(token), userDetails);
+    }
+
+    // Validates a token that has already been parsed and verified
+    public Boolean validateToken(ParsedToken token, UserDetails userDetails) {
+        final String username = token.getSubject();
+        return (username.equals(userDetails.getUsername()) && !token.isExpired());
     }
 }
@@ -0,0 +1,38 @@
+package bt.nhdcl.usermicroservice.service;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+// Delivers each email with its own connection through Spring's JavaMailSender
+@Component
+@ConditionalOnProperty(name = "email.smtp.pooled", havingValue = "false", matchIfMissing = true)
+public class JavaMailDelivery implements MailDelivery {
+
+    private final JavaMailSender mailSender;
+    private final String fromEmail;
+
+    public JavaMailDelivery(JavaMailSender mailSender, @Value("${spring.mail.username}") String fromEmail) {
+        this.mailSender = mailSender;
+        this.fromEmail = fromEmail;
+    }
+
+    @Override
+    public void deliver(EmailMessage email) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        compose(message, fromEmail, email);
+
+        mailSender.send(message);
+    }
+
+    static void compose(MimeMessage message, String from, EmailMessage email) throws MessagingException {
+        message.setFrom(new InternetAddress(from));
+        message.setRecipients(MimeMessage.RecipientType.TO, InternetAddress.parse(email.getTo()));
+        message.setSubject(email.getSubject(), "UTF-8");
+        message.setContent(email.getHtmlContent(), "text/html; charset=utf-8");
+    }
+}
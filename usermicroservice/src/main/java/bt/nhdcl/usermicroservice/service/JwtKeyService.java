@@ -0,0 +1,318 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.entity.SigningKey;
+import bt.nhdcl.usermicroservice.repository.SigningKeyRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manages the RSA key pairs used to sign JWTs.
+ * Keys live in MongoDB so every instance signs with, and publishes, the same set.
+ * A new key is published one JWKS cache period before it starts signing, and an old key
+ * stays published for the overlap period after it stops signing, so peers that verify
+ * tokens locally never see a token signed with a key they cannot find.
+ *
+ * A key's id is derived from its activation time, so instances that rotate at the same
+ * moment generate the same id and only the first insert wins. Private keys are stored
+ * encrypted with AES-GCM under {@code jwt.keys.encryption-key}.
+ */
+@Service
+public class JwtKeyService {
+
+    public static final String ALGORITHM = "RS256";
+
+    // Minimum time between reloads triggered by tokens with an unknown "kid"
+    private static final long UNKNOWN_KID_REFRESH_INTERVAL = 30_000;
+
+    private static final String ENCRYPTED_PREFIX = "aes-gcm:";
+    private static final int GCM_IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SigningKeyRepository signingKeyRepository;
+    private final long rotationPeriod;
+    private final long overlap;
+    private final long prePublish;
+    private final boolean enabled;
+    private final SecretKey encryptionKey; // Null unless RS256 is enabled
+
+    private volatile List<LoadedKey> keys; // Latest activation first
+    private volatile long lastRefresh;
+
+    @Autowired
+    public JwtKeyService(SigningKeyRepository signingKeyRepository,
+            @Value("${jwt.keys.rotation-period-ms:604800000}") long rotationPeriod,
+            @Value("${jwt.keys.overlap-ms:3600000}") long overlap,
+            @Value("${jwt.jwks.max-age-seconds:900}") long jwksMaxAgeSeconds,
+            @Value("${jwt.signing.algorithm:HS256}") String signingAlgorithm,
+            @Value("${jwt.keys.encryption-key:}") String encryptionKey) {
+        this.signingKeyRepository = signingKeyRepository;
+        this.rotationPeriod = rotationPeriod;
+        this.overlap = overlap;
+        this.prePublish = jwksMaxAgeSeconds * 1000;
+        this.enabled = ALGORITHM.equals(signingAlgorithm);
+        this.encryptionKey = enabled ? encryptionKey(encryptionKey) : null;
+    }
+
+    // Key that signs new tokens right now
+    public LoadedKey currentSigningKey() {
+        if (!enabled) {
+            throw new IllegalStateException("JWTs are not signed with " + ALGORITHM);
+        }
+        long now = System.currentTimeMillis();
+        List<LoadedKey> loaded = loadedKeys();
+        LoadedKey current = findSigningKey(loaded, now);
+        if (current == null || isRotationDue(loaded, now)) {
+            refresh(); // Next key is due, or another instance has already published it
+            current = findSigningKey(keys, now);
+        }
+        if (current == null) {
+            throw new IllegalStateException("No active JWT signing key");
+        }
+        return current;
+    }
+
+    // Public key for a "kid" header, or null if no published key matches
+    public PublicKey verificationKey(String kid) {
+        if (!enabled) {
+            return null; // A forged "kid" must not make an HS256 deployment create RSA keys
+        }
+        LoadedKey key = find(loadedKeys(), kid);
+        if (key == null && System.currentTimeMillis() - lastRefresh > UNKNOWN_KID_REFRESH_INTERVAL) {
+            refresh(); // The key may have just been created by another instance
+            key = find(keys, kid);
+        }
+        return key != null ? key.publicKey : null;
+    }
+
+    // Every key that can still verify a live token, as a JSON Web Key Set
+    public Map<String, Object> jwks() {
+        List<Map<String, Object>> jwks = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (LoadedKey key : enabled ? loadedKeys() : List.<LoadedKey>of()) {
+            if (key.expiresAt <= now) {
+                continue;
+            }
+            RSAPublicKey publicKey = (RSAPublicKey) key.publicKey;
+            Map<String, Object> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "RSA");
+            jwk.put("use", "sig");
+            jwk.put("alg", ALGORITHM);
+            jwk.put("kid", key.kid);
+            jwk.put("n", base64Url(publicKey.getModulus()));
+            jwk.put("e", base64Url(publicKey.getPublicExponent()));
+            jwks.add(jwk);
+        }
+
+        Map<String, Object> keySet = new LinkedHashMap<>();
+        keySet.put("keys", jwks);
+        return keySet;
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.keys.refresh-interval-ms:300000}",
+            initialDelayString = "${jwt.keys.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        if (!enabled) {
+            return; // Tokens are signed with the shared HMAC secret, there are no keys to rotate
+        }
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to refresh JWT signing keys: " + e.getMessage());
+        }
+    }
+
+    // Reloads the key set and rotates when the next key is due to be published
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<LoadedKey> loaded = load(now);
+
+        if (isRotationDue(loaded, now)) {
+            try {
+                signingKeyRepository.insert(generate(nextActivation(loaded, now)));
+            } catch (DuplicateKeyException e) {
+                // Another instance published the same key first
+            }
+            loaded = load(now);
+        }
+
+        keys = loaded;
+        lastRefresh = now;
+    }
+
+    private List<LoadedKey> loadedKeys() {
+        List<LoadedKey> current = keys;
+        if (current == null) {
+            refresh();
+            current = keys;
+        }
+        return current;
+    }
+
+    private List<LoadedKey> load(long now) {
+        List<LoadedKey> loaded = new ArrayList<>();
+        for (SigningKey signingKey : signingKeyRepository.findByExpiresAtAfterOrderByActivatesAtDesc(new Date(now))) {
+            try {
+                loaded.add(new LoadedKey(signingKey, decryptPrivateKey(signingKey)));
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                System.err.println("Skipping unreadable JWT signing key " + signingKey.getKid() + ": " + e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    private SigningKey generate(long activatesAt) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair keyPair = generator.generateKeyPair();
+
+            String kid = "rsa-" + activatesAt;
+            return new SigningKey(kid, ALGORITHM,
+                    Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()),
+                    encryptPrivateKey(keyPair.getPrivate().getEncoded(), kid),
+                    new Date(activatesAt), new Date(activatesAt + rotationPeriod + overlap));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to generate JWT signing key", e);
+        }
+    }
+
+    // Depends only on the stored keys and the rotation grid, so racing instances agree on it
+    private long nextActivation(List<LoadedKey> loaded, long now) {
+        if (!loaded.isEmpty()) {
+            long next = loaded.get(0).activatesAt + rotationPeriod;
+            if (next >= now) {
+                return next;
+            }
+        }
+        // No key yet, or none for a whole period: start from the current slot of the grid
+        return now - now % rotationPeriod;
+    }
+
+    // The key id is authenticated with the ciphertext, so an encrypted key cannot be moved to another id
+    private String encryptPrivateKey(byte[] privateKey, String kid) throws GeneralSecurityException {
+        byte[] iv = new byte[GCM_IV_BYTES];
+        RANDOM.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+        cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+        Base64.Encoder encoder = Base64.getEncoder();
+        return ENCRYPTED_PREFIX + encoder.encodeToString(iv) + ":" + encoder.encodeToString(cipher.doFinal(privateKey));
+    }
+
+    // Keys written before encryption was added hold the plain PKCS#8 bytes and are still readable
+    private byte[] decryptPrivateKey(SigningKey signingKey) throws GeneralSecurityException {
+        String stored = signingKey.getPrivateKey();
+        Base64.Decoder decoder = Base64.getDecoder();
+        if (!stored.startsWith(ENCRYPTED_PREFIX)) {
+            return decoder.decode(stored);
+        }
+        String[] parts = stored.substring(ENCRYPTED_PREFIX.length()).split(":", 2);
+        if (parts.length != 2) {
+            throw new GeneralSecurityException("Malformed encrypted private key");
+        }
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, decoder.decode(parts[0])));
+        cipher.updateAAD(signingKey.getKid().getBytes(StandardCharsets.UTF_8));
+        return cipher.doFinal(decoder.decode(parts[1]));
+    }
+
+    private static SecretKey encryptionKey(String base64) {
+        byte[] key = base64 == null || base64.isBlank() ? new byte[0] : Base64.getDecoder().decode(base64.trim());
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalStateException("jwt.keys.encryption-key must be a Base64 AES key of 16, 24 or 32 bytes"
+                    + " when jwt.signing.algorithm is " + ALGORITHM);
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+
+    // The next key is published one JWKS cache period before the latest one has served its rotation period
+    private boolean isRotationDue(List<LoadedKey> loaded, long now) {
+        return loaded.isEmpty() || loaded.get(0).activatesAt + rotationPeriod - prePublish <= now;
+    }
+
+    private static LoadedKey findSigningKey(List<LoadedKey> keys, long now) {
+        for (LoadedKey key : keys) {
+            if (key.activatesAt <= now) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    private static LoadedKey find(List<LoadedKey> keys, String kid) {
+        for (LoadedKey key : keys) {
+            if (key.kid.equals(kid)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    // Unsigned big-endian bytes, as required for the "n" and "e" members of a JWK
+    private static String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] unsigned = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, unsigned, 0, unsigned.length);
+            bytes = unsigned;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public static final class LoadedKey {
+        private final String kid;
+        private final long activatesAt;
+        private final long expiresAt;
+        private final PublicKey publicKey;
+        private final PrivateKey privateKey;
+
+        private LoadedKey(SigningKey signingKey, byte[] privateKey) throws GeneralSecurityException {
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            Base64.Decoder decoder = Base64.getDecoder();
+            this.kid = signingKey.getKid();
+            this.activatesAt = signingKey.getActivatesAt().getTime();
+            this.expiresAt = signingKey.getExpiresAt().getTime();
+            this.publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(decoder.decode(signingKey.getPublicKey())));
+            this.privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateKey));
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package bt.nhdcl.usermicroservice.service;
+
+/**
+ * Performs the actual SMTP delivery of a queued email. Called from the email worker
+ * threads only; any exception makes the dispatcher retry the message.
+ */
+public interface MailDelivery {
+
+    void deliver(EmailMessage message) throws Exception;
+}
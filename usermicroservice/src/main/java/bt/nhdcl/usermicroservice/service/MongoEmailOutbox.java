@@ -0,0 +1,224 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.config.MongoIndexManager;
+import bt.nhdcl.usermicroservice.entity.OutboxEmail;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable email queue in the "email_outbox" collection.
+ *
+ * {@link #enqueue} inserts the message before the request returns, so it survives a
+ * restart. Every instance polls the outbox and claims a batch by stamping a lease on it
+ * with one atomic update; only documents without a live lease can be claimed, so two
+ * instances never send the same message. A claim that dies mid-batch simply lets its
+ * lease run out and the messages are picked up again.
+ */
+@Component
+@ConditionalOnProperty(name = "email.queue.type", havingValue = "outbox")
+public class MongoEmailOutbox implements EmailQueue {
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoIndexManager mongoIndexManager;
+    private final MailDelivery mailDelivery;
+    private final ExecutorService workers;
+    private final int batchSize;
+    private final long leaseMillis;
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final long retentionMillis;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicLong pending = new AtomicLong();
+    private volatile boolean running = true;
+
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter deadLettered;
+
+    @Autowired
+    public MongoEmailOutbox(MongoTemplate mongoTemplate, MongoIndexManager mongoIndexManager, MailDelivery mailDelivery,
+            @Value("${email.workers:2}") int workerCount,
+            @Value("${email.outbox.batch-size:20}") int batchSize,
+            @Value("${email.outbox.lease-ms:300000}") long leaseMillis,
+            @Value("${email.max-attempts:5}") int maxAttempts,
+            @Value("${email.retry.initial-backoff-ms:2000}") long initialBackoff,
+            @Value("${email.retry.max-backoff-ms:60000}") long maxBackoff,
+            @Value("${email.outbox.retention-ms:604800000}") long retentionMillis,
+            MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.mongoIndexManager = mongoIndexManager;
+        this.mailDelivery = mailDelivery;
+        this.batchSize = batchSize;
+        this.leaseMillis = leaseMillis;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retentionMillis = retentionMillis;
+
+        this.sent = meterRegistry.counter("email.sent");
+        this.retried = meterRegistry.counter("email.retried");
+        this.deadLettered = meterRegistry.counter("email.dead.letters");
+        Gauge.builder("email.queue.depth", pending, AtomicLong::get).register(meterRegistry);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "email-outbox-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public boolean enqueue(EmailMessage message) {
+        try {
+            mongoIndexManager.ensureIndexes(OutboxEmail.class);
+            mongoTemplate.insert(new OutboxEmail(message.getTo(), message.getSubject(), message.getHtmlContent(),
+                    new Date()));
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("Failed to write email to the outbox: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Claims and sends batches until the outbox has nothing due
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-ms:1000}",
+            initialDelayString = "${email.outbox.poll-interval-ms:1000}")
+    public void dispatch() {
+        try {
+            mongoIndexManager.ensureIndexes(OutboxEmail.class);
+            List<OutboxEmail> batch;
+            do {
+                String claimId = instanceId + ":" + UUID.randomUUID();
+                batch = claimBatch(claimId);
+                send(batch, claimId);
+            } while (running && batch.size() == batchSize);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to dispatch the email outbox: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Counting is too costly for every poll, so the depth gauge is refreshed on its own interval
+    @Scheduled(fixedDelayString = "${email.outbox.metrics-interval-ms:30000}",
+            initialDelayString = "${email.outbox.metrics-interval-ms:30000}")
+    public void refreshDepth() {
+        try {
+            pending.set(mongoTemplate.count(new Query(Criteria.where("status").is(OutboxEmail.PENDING)),
+                    OutboxEmail.class));
+        } catch (RuntimeException e) {
+            System.err.println("Failed to count the email outbox: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.shutdown();
+    }
+
+    private List<OutboxEmail> claimBatch(String claimId) {
+        Date now = new Date();
+        Criteria claimable = Criteria.where("status").is(OutboxEmail.PENDING)
+                .and("nextAttemptAt").lte(now)
+                .and("leaseExpiresAt").lte(now);
+
+        Query candidates = new Query(claimable).with(Sort.by("nextAttemptAt")).limit(batchSize);
+        candidates.fields().include("_id");
+        List<String> ids = mongoTemplate.find(candidates, OutboxEmail.class).stream()
+                .map(OutboxEmail::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        // Each document is claimed atomically; one already taken by another instance no longer matches
+        Criteria stillClaimable = Criteria.where("_id").in(ids)
+                .and("status").is(OutboxEmail.PENDING)
+                .and("leaseExpiresAt").lte(now);
+        mongoTemplate.updateMulti(new Query(stillClaimable),
+                new Update().set("leaseOwner", claimId).set("leaseExpiresAt", new Date(now.getTime() + leaseMillis)),
+                OutboxEmail.class);
+
+        // Looked up by _id, as leaseOwner is not indexed and sent emails stay for the retention period
+        return mongoTemplate.find(new Query(Criteria.where("_id").in(ids).and("leaseOwner").is(claimId)),
+                OutboxEmail.class);
+    }
+
+    private void send(List<OutboxEmail> batch, String claimId) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(batch.size());
+        for (OutboxEmail email : batch) {
+            tasks.add(() -> {
+                deliver(email, claimId);
+                return null;
+            });
+        }
+        workers.invokeAll(tasks);
+    }
+
+    private void deliver(OutboxEmail email, String claimId) {
+        int attempts = email.getAttempts() + 1;
+        try {
+            mailDelivery.deliver(new EmailMessage(email.getTo(), email.getSubject(), email.getHtmlContent()));
+            sent.increment();
+            finish(email, claimId, OutboxEmail.SENT, attempts);
+        } catch (Exception e) {
+            if (attempts >= maxAttempts) {
+                deadLettered.increment();
+                EmailDispatcher.logDeadLetter(email.getTo(), email.getSubject(), attempts, e);
+                finish(email, claimId, OutboxEmail.DEAD, attempts);
+            } else {
+                retried.increment();
+                long delay = EmailDispatcher.retryDelay(attempts, initialBackoff, maxBackoff);
+                mongoTemplate.updateFirst(ownedBy(email, claimId), new Update()
+                        .set("attempts", attempts)
+                        .set("nextAttemptAt", new Date(System.currentTimeMillis() + delay))
+                        .set("leaseExpiresAt", new Date(0))
+                        .unset("leaseOwner"), OutboxEmail.class);
+            }
+        }
+    }
+
+    // Terminal states drop the body and let the TTL index remove the document after the retention period
+    private void finish(OutboxEmail email, String claimId, String status, int attempts) {
+        mongoTemplate.updateFirst(ownedBy(email, claimId), new Update()
+                .set("status", status)
+                .set("attempts", attempts)
+                .set("expireAt", new Date(System.currentTimeMillis() + retentionMillis))
+                .unset("htmlContent")
+                .unset("leaseOwner"), OutboxEmail.class);
+    }
+
+    private static Query ownedBy(OutboxEmail email, String claimId) {
+        return new Query(Criteria.where("_id").is(email.getId()).and("leaseOwner").is(claimId));
+    }
+}
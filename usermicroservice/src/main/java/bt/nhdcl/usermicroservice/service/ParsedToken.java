@@ -0,0 +1,119 @@
+package bt.nhdcl.usermicroservice.service;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of a JWT whose signature and expiry have been verified.
+ * Every claim the service needs is read once, when the token is parsed.
+ */
+public final class ParsedToken {
+
+    private final String tokenId;
+    private final String subject;
+    private final String email;
+    private final List<String> roles;
+    private final long issuedAt;
+    private final long expiration;
+    private final String userId;
+    private final String roleName;
+    private final String academyId;
+    private final String departmentId;
+    private final Long securityVersion;
+
+    private ParsedToken(Claims claims) {
+        this.tokenId = claims.getId();
+        this.subject = claims.getSubject();
+        this.email = claims.get("email", String.class);
+        this.roles = readRoles(claims.get("roles"));
+        this.issuedAt = claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() : 0L;
+        this.expiration = claims.getExpiration() != null ? claims.getExpiration().getTime() : Long.MAX_VALUE;
+        this.userId = claims.get(JWTUtil.USER_ID_CLAIM, String.class);
+        this.roleName = claims.get(JWTUtil.ROLE_CLAIM, String.class);
+        this.academyId = claims.get(JWTUtil.ACADEMY_ID_CLAIM, String.class);
+        this.departmentId = claims.get(JWTUtil.DEPARTMENT_ID_CLAIM, String.class);
+        Number version = claims.get(JWTUtil.SECURITY_VERSION_CLAIM, Number.class);
+        this.securityVersion = version != null ? version.longValue() : null;
+    }
+
+    static ParsedToken from(Claims claims) {
+        return new ParsedToken(claims);
+    }
+
+    // Roles are serialised either as plain names or as Spring Security {"authority": ...} objects
+    private static List<String> readRoles(Object value) {
+        if (!(value instanceof Collection<?> collection)) {
+            return Collections.emptyList();
+        }
+
+        List<String> names = new ArrayList<>(collection.size());
+        for (Object role : collection) {
+            if (role instanceof Map<?, ?> map && map.get("authority") != null) {
+                names.add(map.get("authority").toString());
+            } else if (role != null) {
+                names.add(role.toString());
+            }
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    // Null for tokens issued before tokens carried a "jti"
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    public Date getIssuedAt() {
+        return new Date(issuedAt);
+    }
+
+    public Date getExpiration() {
+        return new Date(expiration);
+    }
+
+    public long getExpirationMillis() {
+        return expiration;
+    }
+
+    public boolean isExpired() {
+        return expiration <= System.currentTimeMillis();
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getRoleName() {
+        return roleName;
+    }
+
+    public String getAcademyId() {
+        return academyId;
+    }
+
+    public String getDepartmentId() {
+        return departmentId;
+    }
+
+    // Null for tokens issued before the security version claim existed
+    public Long getSecurityVersion() {
+        return securityVersion;
+    }
+}
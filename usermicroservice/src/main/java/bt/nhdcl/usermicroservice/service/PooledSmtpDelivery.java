@@ -0,0 +1,212 @@
+package bt.nhdcl.usermicroservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Delivers email over a small pool of SMTP connections that stay open between messages,
+ * so the STARTTLS and AUTH handshake is paid once per connection rather than once per
+ * email. While the queue has work, each worker keeps sending on the same connection.
+ *
+ * A connection is replaced once it has been idle longer than the idle timeout, after a
+ * set number of messages, or when a send fails because the server dropped it. In the
+ * last case the message is retried once on a fresh connection.
+ */
+@Component
+@ConditionalOnProperty(name = "email.smtp.pooled", havingValue = "true")
+public class PooledSmtpDelivery implements MailDelivery {
+
+    private final Session session;
+    private final String protocol;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final String fromEmail;
+    private final long idleTimeout;
+    private final int maxMessagesPerConnection;
+
+    private final Semaphore permits;
+    // Most recently used first, so surplus connections are the ones that reach the idle timeout
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    private final Counter connectionsOpened;
+
+    @Autowired
+    public PooledSmtpDelivery(MailProperties mailProperties,
+            @Value("${email.smtp.max-connections:2}") int maxConnections,
+            @Value("${email.smtp.idle-timeout-ms:60000}") long idleTimeout,
+            @Value("${email.smtp.max-messages-per-connection:100}") int maxMessagesPerConnection,
+            MeterRegistry meterRegistry) {
+        this(sessionProperties(mailProperties), mailProperties.getProtocol(), mailProperties.getHost(),
+                mailProperties.getPort() == null ? -1 : mailProperties.getPort(), mailProperties.getUsername(),
+                mailProperties.getPassword(), mailProperties.getUsername(), maxConnections, idleTimeout,
+                maxMessagesPerConnection, meterRegistry);
+    }
+
+    public PooledSmtpDelivery(Properties sessionProperties, String protocol, String host, int port, String username,
+            String password, String fromEmail, int maxConnections, long idleTimeout, int maxMessagesPerConnection,
+            MeterRegistry meterRegistry) {
+        this.session = Session.getInstance(sessionProperties);
+        this.protocol = protocol;
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.fromEmail = fromEmail;
+        this.idleTimeout = idleTimeout;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.permits = new Semaphore(maxConnections);
+
+        this.connectionsOpened = meterRegistry.counter("email.smtp.connections.opened");
+        Gauge.builder("email.smtp.connections.idle", idle, BlockingDeque::size).register(meterRegistry);
+    }
+
+    @Override
+    public void deliver(EmailMessage email) throws MessagingException, InterruptedException {
+        MimeMessage message = new MimeMessage(session);
+        JavaMailDelivery.compose(message, fromEmail, email);
+        message.saveChanges();
+
+        permits.acquire();
+        try {
+            PooledConnection connection = borrow();
+            try {
+                connection.send(message);
+            } catch (MessagingException | IllegalStateException e) {
+                if (isRecipientRejected(e)) {
+                    // The connection itself is still good
+                    release(connection);
+                    throw e;
+                }
+                // Most likely the server closed the connection; try once more on a new one
+                close(connection);
+                connection = open();
+                try {
+                    connection.send(message);
+                } catch (MessagingException | RuntimeException retryFailure) {
+                    close(connection);
+                    throw retryFailure;
+                }
+            }
+            release(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${email.smtp.idle-timeout-ms:60000}")
+    public void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> expired = new ArrayList<>();
+        idle.removeIf(connection -> {
+            if (now - connection.lastUsed >= idleTimeout) {
+                expired.add(connection);
+                return true;
+            }
+            return false;
+        });
+        expired.forEach(this::close);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            close(connection);
+        }
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    private PooledConnection borrow() throws MessagingException {
+        long now = System.currentTimeMillis();
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            if (connection.isReusable(now)) {
+                return connection;
+            }
+            close(connection);
+        }
+        return open();
+    }
+
+    private void release(PooledConnection connection) {
+        connection.lastUsed = System.currentTimeMillis();
+        if (connection.sent >= maxMessagesPerConnection) {
+            close(connection);
+        } else {
+            idle.offerFirst(connection);
+        }
+    }
+
+    private PooledConnection open() throws MessagingException {
+        Transport transport = session.getTransport(protocol);
+        transport.connect(host, port, username, password);
+        connectionsOpened.increment();
+        return new PooledConnection(transport);
+    }
+
+    private void close(PooledConnection connection) {
+        try {
+            connection.transport.close();
+        } catch (MessagingException e) {
+            // Already closed by the server
+        }
+    }
+
+    private static boolean isRecipientRejected(Exception e) {
+        return e instanceof SendFailedException sendFailed
+                && sendFailed.getInvalidAddresses() != null
+                && sendFailed.getInvalidAddresses().length > 0;
+    }
+
+    private static Properties sessionProperties(MailProperties mailProperties) {
+        Properties properties = new Properties();
+        properties.putAll(mailProperties.getProperties());
+        return properties;
+    }
+
+    private final class PooledConnection {
+        private final Transport transport;
+        private long lastUsed = System.currentTimeMillis();
+        private int sent;
+
+        private PooledConnection(Transport transport) {
+            this.transport = transport;
+        }
+
+        private void send(MimeMessage message) throws MessagingException {
+            transport.sendMessage(message, message.getAllRecipients());
+            sent++;
+        }
+
+        // Transport.isConnected() would cost a NOOP round trip; a dropped connection is caught on send instead
+        private boolean isReusable(long now) {
+            return now - lastUsed < idleTimeout && sent < maxMessagesPerConnection;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.config.MongoIndexManager;
+import bt.nhdcl.usermicroservice.entity.RefreshToken;
+import bt.nhdcl.usermicroservice.exception.InvalidTokenException;
+import bt.nhdcl.usermicroservice.repository.RefreshTokenRepository;
+import bt.nhdcl.usermicroservice.security.NhdclUserDetails;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Issues and rotates refresh tokens, so an expired access token can be replaced
+ * without another password check. Each refresh token can be exchanged once; presenting
+ * a token that was already exchanged revokes every token of that login.
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final MongoTemplate mongoTemplate;
+    private final MongoIndexManager mongoIndexManager;
+    private final long refreshTokenExpiration;
+
+    @Autowired
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository, MongoTemplate mongoTemplate,
+            MongoIndexManager mongoIndexManager,
+            @Value("${jwt.refresh.expiration-ms:604800000}") long refreshTokenExpiration) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.mongoIndexManager = mongoIndexManager;
+        this.refreshTokenExpiration = refreshTokenExpiration;
+    }
+
+    // Starts a new token family for a fresh login
+    public String issue(NhdclUserDetails userDetails) {
+        return issue(userDetails.getUserId(), userDetails.getUsername(), UUID.randomUUID().toString(),
+                userDetails.getSecurityVersion());
+    }
+
+    // Marks a refresh token as exchanged and returns its record; each token can be consumed only once
+    public RefreshToken consume(String refreshToken) {
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            throw new InvalidTokenException("Refresh token is required");
+        }
+
+        String tokenHash = hash(refreshToken);
+        Query query = new Query(Criteria.where("_id").is(tokenHash)
+                .and("used").is(false)
+                .and("expiresAt").gt(new Date()));
+        RefreshToken consumed = mongoTemplate.findAndModify(query, new Update().set("used", true),
+                FindAndModifyOptions.options().returnNew(true), RefreshToken.class);
+
+        if (consumed == null) {
+            // A token that was already exchanged is being replayed: assume it was stolen
+            refreshTokenRepository.findById(tokenHash)
+                    .filter(RefreshToken::isUsed)
+                    .ifPresent(reused -> refreshTokenRepository.deleteByFamilyId(reused.getFamilyId()));
+            throw new InvalidTokenException("Invalid or expired refresh token");
+        }
+        return consumed;
+    }
+
+    // Issues the successor of a consumed token in the same family
+    public String rotate(RefreshToken consumed) {
+        return issue(consumed.getUserId(), consumed.getEmail(), consumed.getFamilyId(),
+                consumed.getSecurityVersion());
+    }
+
+    public void revokeFamily(String familyId) {
+        refreshTokenRepository.deleteByFamilyId(familyId);
+    }
+
+    public void revoke(String refreshToken) {
+        if (refreshToken != null && !refreshToken.isEmpty()) {
+            refreshTokenRepository.findById(hash(refreshToken))
+                    .ifPresent(token -> refreshTokenRepository.deleteByFamilyId(token.getFamilyId()));
+        }
+    }
+
+    public void revokeAll(String userId) {
+        refreshTokenRepository.deleteByUserId(userId);
+    }
+
+    public long getRefreshTokenExpiration() {
+        return refreshTokenExpiration;
+    }
+
+    private String issue(String userId, String email, String familyId, long securityVersion) {
+        mongoIndexManager.ensureIndexes(RefreshToken.class);
+
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        long now = System.currentTimeMillis();
+        refreshTokenRepository.save(new RefreshToken(hash(refreshToken), userId, email, familyId, securityVersion,
+                new Date(now), new Date(now + refreshTokenExpiration)));
+        return refreshToken;
+    }
+
+    private static String hash(String refreshToken) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(refreshToken.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -14,5 +14,8 @@ public interface RoleService {
 
     Optional<Role> getRoleByName(String name); // Add this line
 
+    // Empty if no role has the id; a new name is copied to the role's users in the background
+    Optional<Role> updateRole(String id, Role role);
+
     void deleteRoleById(String id);
 }
@@ -6,15 +6,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
 public class RoleServiceImpl implements RoleService {
     private final RoleRepository roleRepository;
+    private final RoleSnapshotService roleSnapshotService;
 
     @Autowired
-    public RoleServiceImpl(RoleRepository roleRepository) {
+    public RoleServiceImpl(RoleRepository roleRepository, RoleSnapshotService roleSnapshotService) {
         this.roleRepository = roleRepository;
+        this.roleSnapshotService = roleSnapshotService;
     }
 
     @Override
@@ -38,8 +41,26 @@ public class RoleServiceImpl implements RoleService {
         return roleRepository.findByName(name);
     }
 
+    @Override
+    public Optional<Role> updateRole(String id, Role role) {
+        return roleRepository.findById(id).map(existingRole -> {
+            boolean renamed = !Objects.equals(existingRole.getName(), role.getName());
+            existingRole.setName(role.getName());
+            existingRole.setDescription(role.getDescription());
+            Role saved = roleRepository.save(existingRole);
+
+            // Users hold a copy of the role name
+            if (renamed) {
+                roleSnapshotService.propagateRename(id, saved.getName());
+            }
+            return saved;
+        });
+    }
+
     @Override
     public void deleteRoleById(String id) {
         roleRepository.deleteById(id);
+        // Users hold a copy of the role, which would otherwise still grant its authority
+        roleSnapshotService.removeRole(id);
     }
 }
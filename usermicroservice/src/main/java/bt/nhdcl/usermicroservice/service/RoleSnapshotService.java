@@ -0,0 +1,197 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.entity.Role;
+import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.security.TokenRevocationService;
+import bt.nhdcl.usermicroservice.security.UserDetailsCache;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the role snapshot embedded in each user document in step with the roles collection.
+ *
+ * A role rename is copied onto its users in the background with a single multi-document
+ * update. A deleted role is removed from its users, whose tokens are invalidated, as it
+ * would otherwise still be granted from the snapshot. Documents still holding the old
+ * {@code @DBRef} are rewritten to the embedded form in batches, with one roles query per
+ * batch; the migration runs shortly after startup and again on each interval until a pass
+ * finds nothing left to convert.
+ */
+@Component
+public class RoleSnapshotService {
+
+    private final MongoTemplate mongoTemplate;
+    private final UserDetailsCache userDetailsCache;
+    private final TokenRevocationService tokenRevocationService;
+    private final int batchSize;
+    private final ExecutorService fanOut;
+    private volatile boolean migrated;
+
+    @Autowired
+    public RoleSnapshotService(MongoTemplate mongoTemplate, UserDetailsCache userDetailsCache,
+            TokenRevocationService tokenRevocationService,
+            @Value("${users.role-migration.batch-size:500}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.userDetailsCache = userDetailsCache;
+        this.tokenRevocationService = tokenRevocationService;
+        this.batchSize = batchSize;
+        this.fanOut = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "role-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Copies a renamed role onto every user holding it, without making the caller wait
+    public void propagateRename(String roleId, String name) {
+        if (!ObjectId.isValid(roleId)) {
+            return;
+        }
+        fanOut.execute(() -> {
+            try {
+                mongoTemplate.updateMulti(
+                        new Query(Criteria.where("role._id").is(new ObjectId(roleId)).and("role.name").ne(name)),
+                        new Update().set("role.name", name), usersCollection());
+                // Cached details still carry the old name as their authority
+                userDetailsCache.clear();
+            } catch (RuntimeException e) {
+                System.err.println("Failed to copy the new name of role " + roleId + " to its users: "
+                        + e.getMessage());
+            }
+        });
+    }
+
+    // Takes a deleted role away from its users and bumps their security version, so neither
+    // cached details nor issued tokens keep granting it
+    public void removeRole(String roleId) {
+        if (!ObjectId.isValid(roleId)) {
+            return;
+        }
+        Criteria holdingRole = Criteria.where("role._id").is(new ObjectId(roleId));
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("securityVersion").toValue(ArithmeticOperators.valueOf(
+                        ConditionalOperators.ifNull("securityVersion").then(0L)).add(1))
+                .unset("role");
+
+        // Repeats only if the role was assigned to someone while the previous pass ran
+        List<Object> ids;
+        while (!(ids = idsOf(new Query(holdingRole))).isEmpty()) {
+            mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(ids).andOperator(holdingRole)),
+                    update, usersCollection());
+
+            // Versions are read back after the update, so each published one covers the bump
+            Query updated = new Query(Criteria.where("_id").in(ids));
+            updated.fields().include("email", "securityVersion");
+            Map<String, Long> versions = new HashMap<>();
+            for (Document user : mongoTemplate.find(updated, Document.class, usersCollection())) {
+                Number version = (Number) user.get("securityVersion");
+                versions.put(UserDocuments.id(user.get("_id")), version == null ? 0 : version.longValue());
+                userDetailsCache.invalidate(user.getString("email"));
+            }
+            tokenRevocationService.publishSecurityVersions(versions);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${users.role-migration.initial-delay-ms:30000}",
+            fixedDelayString = "${users.role-migration.interval-ms:3600000}")
+    public void migrateLegacyRoles() {
+        if (migrated) {
+            return;
+        }
+        try {
+            int converted;
+            do {
+                converted = migrateBatch();
+            } while (converted == batchSize);
+            migrated = true;
+        } catch (RuntimeException e) {
+            System.err.println("Failed to migrate user roles to embedded snapshots: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOut.shutdown();
+    }
+
+    // Returns how many documents the batch held
+    int migrateBatch() {
+        Query legacy = new Query(Criteria.where("role.$ref").exists(true)).limit(batchSize);
+        legacy.fields().include("role");
+        List<Document> users = mongoTemplate.find(legacy, Document.class, usersCollection());
+        if (users.isEmpty()) {
+            return 0;
+        }
+
+        Set<Object> roleIds = new LinkedHashSet<>();
+        for (Document user : users) {
+            Object roleId = UserDocuments.referencedRoleId(user.get("role"));
+            if (roleId != null) {
+                roleIds.add(roleId);
+            }
+        }
+        Map<Object, String> roleNames = new HashMap<>();
+        Query roles = new Query(Criteria.where("_id").in(roleIds));
+        roles.fields().include("name");
+        for (Document role : mongoTemplate.find(roles, Document.class, mongoTemplate.getCollectionName(Role.class))) {
+            roleNames.put(role.get("_id"), role.getString("name"));
+        }
+
+        List<String> userIds = new ArrayList<>(users.size());
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, usersCollection());
+        for (Document user : users) {
+            Object reference = user.get("role");
+            Object roleId = UserDocuments.referencedRoleId(reference);
+            // Only rewrite the reference we read, in case the user's role changed meanwhile
+            Query query = new Query(Criteria.where("_id").is(user.get("_id")).and("role").is(reference));
+            if (roleId != null && roleNames.containsKey(roleId)) {
+                bulk.updateOne(query, new Update().set("role",
+                        new Document("_id", roleId).append("name", roleNames.get(roleId))));
+            } else {
+                // The role was deleted; a dangling reference already read as no role
+                bulk.updateOne(query, new Update().unset("role"));
+            }
+            userIds.add(UserDocuments.id(user.get("_id")));
+        }
+        bulk.execute();
+        userIds.forEach(userDetailsCache::invalidateUser);
+        return users.size();
+    }
+
+    private List<Object> idsOf(Query query) {
+        query.fields().include("_id");
+        List<Object> ids = new ArrayList<>();
+        for (Document user : mongoTemplate.find(query, Document.class, usersCollection())) {
+            ids.add(user.get("_id"));
+        }
+        return ids;
+    }
+
+    private String usersCollection() {
+        return mongoTemplate.getCollectionName(User.class);
+    }
+}
@@ -0,0 +1,93 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.dto.UserSummary;
+import bt.nhdcl.usermicroservice.entity.Role;
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads user read models straight from raw "users" documents, so unprojected fields are
+ * never materialised and the role is never resolved document by document.
+ */
+final class UserDocuments {
+
+    // Fields projected for a UserSummary
+    static final String[] SUMMARY_FIELDS = { "employeeId", "email", "name", "enabled", "image", "academyId",
+            "departmentId", "role" };
+
+    private UserDocuments() {
+    }
+
+    // Maps the documents; names of roles still held as references are looked up in one query
+    static List<UserSummary> toSummaries(List<Document> users, MongoTemplate mongoTemplate) {
+        Set<Object> roleIds = new LinkedHashSet<>();
+        for (Document user : users) {
+            Object roleId = referencedRoleId(user.get("role"));
+            if (roleId != null) {
+                roleIds.add(roleId);
+            }
+        }
+
+        Map<String, String> roleNames = new HashMap<>();
+        if (!roleIds.isEmpty()) {
+            Query query = new Query(Criteria.where("_id").in(roleIds));
+            query.fields().include("name");
+            for (Document role : mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Role.class))) {
+                roleNames.put(id(role.get("_id")), role.getString("name"));
+            }
+        }
+
+        List<UserSummary> summaries = new ArrayList<>(users.size());
+        for (Document user : users) {
+            Object role = user.get("role");
+            String roleId = roleId(role);
+            String roleName = referencedRoleId(role) == null && role instanceof Document snapshot
+                    ? snapshot.getString("name")
+                    : roleNames.get(roleId);
+            summaries.add(new UserSummary(id(user.get("_id")), user.getString("employeeId"),
+                    user.getString("email"), user.getString("name"), Boolean.TRUE.equals(user.getBoolean("enabled")),
+                    user.getString("image"), user.getString("academyId"), user.getString("departmentId"),
+                    roleId == null ? null : new UserSummary.RoleSummary(roleId, roleName)));
+        }
+        return summaries;
+    }
+
+    // Id of the role, whether held as an embedded {_id, name} snapshot or a legacy reference
+    static String roleId(Object role) {
+        Object referenced = referencedRoleId(role);
+        if (referenced != null) {
+            return id(referenced);
+        }
+        return role instanceof Document snapshot ? id(snapshot.get("_id")) : null;
+    }
+
+    // Id held by a legacy role reference, or null for a snapshot. Depending on the codec a
+    // DBRef is decoded as a DBRef or as a plain {$ref, $id} document
+    static Object referencedRoleId(Object role) {
+        if (role instanceof DBRef ref) {
+            return ref.getId();
+        }
+        if (role instanceof Document document && document.containsKey("$ref")) {
+            return document.get("$id");
+        }
+        return null;
+    }
+
+    static String id(Object id) {
+        if (id instanceof ObjectId objectId) {
+            return objectId.toHexString();
+        }
+        return id == null ? null : id.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.entity.User;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams the users collection to an output stream as NDJSON or CSV.
+ *
+ * Documents are read as raw BSON from a Mongo cursor with only the exported fields
+ * projected, and each one is written out before the next is read, so memory stays at
+ * one cursor batch however many users there are. Writes block while the client is
+ * slow to read, and the cursor only fetches its next batch once the current one has
+ * been written.
+ */
+@Service
+public class UserExportService {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    // Exported fields, in CSV column order; the password and OTP are never read
+    static final String[] FIELDS = { "userId", "employeeId", "email", "name", "enabled", "academyId",
+            "departmentId", "roleId", "image" };
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final MongoTemplate mongoTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public UserExportService(MongoTemplate mongoTemplate,
+            @Value("${users.export.batch-size:500}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.batchSize = batchSize;
+    }
+
+    // Any filter left null matches every user
+    public void export(Boolean enabled, String academyId, String departmentId, Format format, OutputStream out)
+            throws IOException {
+        Criteria criteria = new Criteria();
+        if (enabled != null) {
+            criteria = criteria.and("enabled").is(enabled);
+        }
+        if (academyId != null) {
+            criteria = criteria.and("academyId").is(academyId);
+        }
+        if (departmentId != null) {
+            criteria = criteria.and("departmentId").is(departmentId);
+        }
+
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "_id")).cursorBatchSize(batchSize);
+        query.fields().include("employeeId", "email", "name", "enabled", "academyId", "departmentId", "role",
+                "image");
+
+        try (Stream<Document> users = mongoTemplate.stream(query, Document.class,
+                mongoTemplate.getCollectionName(User.class))) {
+            write(users.iterator(), format, out);
+        }
+    }
+
+    static void write(Iterator<Document> users, Format format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == Format.CSV) {
+            writeCsv(users, writer);
+        } else {
+            writeNdjson(users, writer);
+        }
+        writer.flush();
+    }
+
+    private static void writeNdjson(Iterator<Document> users, Writer writer) throws IOException {
+        JsonGenerator json = JSON.createGenerator(writer);
+        json.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        // The writer is flushed once at the end, not per user
+        json.configure(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM, false);
+        while (users.hasNext()) {
+            Document user = users.next();
+            json.writeStartObject();
+            for (String field : FIELDS) {
+                Object value = value(user, field);
+                if (value instanceof Boolean flag) {
+                    json.writeBooleanField(field, flag);
+                } else if (value != null) {
+                    json.writeStringField(field, value.toString());
+                } else {
+                    json.writeNullField(field);
+                }
+            }
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+        json.close();
+    }
+
+    private static void writeCsv(Iterator<Document> users, Writer writer) throws IOException {
+        writer.write(String.join(",", FIELDS));
+        writer.write("\r\n");
+        while (users.hasNext()) {
+            Document user = users.next();
+            for (int i = 0; i < FIELDS.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                Object value = value(user, FIELDS[i]);
+                if (value != null) {
+                    writeCsvField(value.toString(), writer);
+                }
+            }
+            writer.write("\r\n");
+        }
+    }
+
+    // RFC 4180: quote fields holding a delimiter, quote or line break, doubling embedded quotes
+    static void writeCsvField(String value, Writer writer) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static Object value(Document user, String field) {
+        return switch (field) {
+            case "userId" -> UserDocuments.id(user.get("_id"));
+            case "roleId" -> UserDocuments.roleId(user.get("role"));
+            default -> user.get(field);
+        };
+    }
+}
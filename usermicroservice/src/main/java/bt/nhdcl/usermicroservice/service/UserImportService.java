@@ -0,0 +1,428 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.dto.ImportReport;
+import bt.nhdcl.usermicroservice.entity.Role;
+import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.security.PasswordHashingService;
+import bt.nhdcl.usermicroservice.security.TokenRevocationService;
+import bt.nhdcl.usermicroservice.security.UserDetailsCache;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Creates users in bulk from a CSV or JSON upload.
+ *
+ * The input is parsed as a stream and handled in batches. For each batch the existing
+ * owners of its emails and employee IDs are loaded with one query, the passwords are
+ * hashed in parallel on the password hashing pool, and the new users are written with a
+ * single unordered bulk write, so one bad row never stops the others. Every row gets
+ * an entry in the returned report; once a batch has been written, input that cannot be
+ * parsed ends the report with a failed row instead of failing the whole upload.
+ *
+ * A row whose email belongs to a soft-deleted user replaces that user's document in the
+ * same bulk write, keeping its id, so a failed row never leaves the old user deleted.
+ */
+@Service
+public class UserImportService {
+
+    public enum Format {
+        CSV, JSON
+    }
+
+    static final List<String> COLUMNS = List.of("email", "password", "name", "employeeId", "academyId",
+            "departmentId", "roleId");
+
+    private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final PasswordHashingService passwordHashingService;
+    private final RoleService roleService;
+    private final TokenRevocationService tokenRevocationService;
+    private final UserDetailsCache userDetailsCache;
+    private final EmailService emailService;
+    private final int batchSize;
+
+    @Autowired
+    public UserImportService(MongoTemplate mongoTemplate, PasswordHashingService passwordHashingService,
+            RoleService roleService, TokenRevocationService tokenRevocationService, UserDetailsCache userDetailsCache,
+            EmailService emailService, @Value("${users.import.batch-size:500}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.passwordHashingService = passwordHashingService;
+        this.roleService = roleService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.userDetailsCache = userDetailsCache;
+        this.emailService = emailService;
+        this.batchSize = batchSize;
+    }
+
+    // Throws IllegalArgumentException or JsonProcessingException when the upload cannot be parsed
+    // before anything was written; a parse error after that ends the report with a failed row
+    public ImportReport importUsers(InputStream in, Format format, Locale locale) throws IOException {
+        Map<String, Role> roles = new HashMap<>();
+        for (Role role : roleService.getAllRoles()) {
+            roles.put(role.getRoleId(), role);
+        }
+
+        ImportContext context = new ImportContext(roles, locale);
+        RowSource source = format == Format.CSV ? csvRows(in) : jsonRows(in);
+        List<ImportRow> batch = new ArrayList<>(batchSize);
+        boolean written = false;
+        int rowNumber = 0;
+        Map<String, String> fields;
+        while (true) {
+            try {
+                fields = source.next();
+            } catch (IllegalArgumentException | JsonProcessingException e) {
+                if (!written) {
+                    throw e;
+                }
+                // Earlier batches are already created, so the client needs the report rather than an error
+                if (!batch.isEmpty()) {
+                    importBatch(batch, context);
+                }
+                context.report.add(ImportReport.RowResult.failed(rowNumber + 1, null,
+                        "Could not be parsed, import stopped: " + e.getMessage()));
+                return context.report;
+            }
+            if (fields == null) {
+                break;
+            }
+            batch.add(new ImportRow(++rowNumber, fields));
+            if (batch.size() == batchSize) {
+                importBatch(batch, context);
+                batch.clear();
+                written = true;
+            }
+        }
+        if (!batch.isEmpty()) {
+            importBatch(batch, context);
+        }
+        return context.report;
+    }
+
+    private void importBatch(List<ImportRow> batch, ImportContext context) {
+        List<ImportRow> valid = new ArrayList<>(batch.size());
+        for (ImportRow row : batch) {
+            String error = validate(row, context);
+            if (error != null) {
+                row.error = error;
+            } else {
+                valid.add(row);
+            }
+        }
+
+        try {
+            if (!valid.isEmpty()) {
+                valid = withoutConflicts(valid);
+            }
+            if (!valid.isEmpty()) {
+                insert(valid, context);
+            }
+        } catch (RuntimeException e) {
+            // Nothing in the batch is known to be written; report it and carry on with the next one
+            for (ImportRow row : valid) {
+                row.userId = null;
+                row.error = "Import failed: " + e.getMessage();
+            }
+        }
+
+        for (ImportRow row : batch) {
+            context.report.add(row.error == null
+                    ? ImportReport.RowResult.created(row.number, row.email(), row.userId)
+                    : ImportReport.RowResult.failed(row.number, row.email(), row.error));
+        }
+    }
+
+    private static String validate(ImportRow row, ImportContext context) {
+        for (String column : COLUMNS) {
+            if (row.get(column) == null) {
+                return "Missing " + column;
+            }
+        }
+        if (!EMAIL.matcher(row.email()).matches()) {
+            return "Invalid email";
+        }
+        if (!context.roles.containsKey(row.get("roleId"))) {
+            return "Role not found";
+        }
+        // Later rows repeating an email or employee ID already seen in the upload are rejected
+        if (!context.emails.add(row.email())) {
+            return "Email appears more than once in the import";
+        }
+        if (!context.employeeIds.add(row.get("employeeId"))) {
+            return "Employee ID appears more than once in the import";
+        }
+        return null;
+    }
+
+    // Checks the batch against existing users with a single query, like createUser does row by row
+    private List<ImportRow> withoutConflicts(List<ImportRow> rows) {
+        List<String> emails = new ArrayList<>(rows.size());
+        List<String> employeeIds = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            emails.add(row.email());
+            employeeIds.add(row.get("employeeId"));
+        }
+
+        Query query = new Query(new Criteria().orOperator(Criteria.where("email").in(emails),
+                Criteria.where("employeeId").in(employeeIds)));
+        query.fields().include("email", "employeeId", "enabled", "securityVersion");
+        Map<String, Document> byEmail = new HashMap<>();
+        Map<String, Document> byEmployeeId = new HashMap<>();
+        for (Document existing : mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(User.class))) {
+            if (existing.getString("email") != null) {
+                byEmail.put(existing.getString("email"), existing);
+            }
+            if (existing.getString("employeeId") != null) {
+                byEmployeeId.put(existing.getString("employeeId"), existing);
+            }
+        }
+
+        List<ImportRow> accepted = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            Document sameEmail = byEmail.get(row.email());
+            Document sameEmployeeId = byEmployeeId.get(row.get("employeeId"));
+            if (sameEmail != null && Boolean.TRUE.equals(sameEmail.getBoolean("enabled"))) {
+                row.error = "Email is already in use by an active user.";
+            } else if (sameEmployeeId != null && sameEmployeeId != sameEmail) {
+                row.error = "Employee ID is already in use.";
+            } else {
+                // A soft-deleted user with the email is replaced so it can be registered again
+                if (sameEmail != null) {
+                    Number version = (Number) sameEmail.get("securityVersion");
+                    row.replacedUserId = UserDocuments.id(sameEmail.get("_id"));
+                    row.replacedVersion = version == null ? 0 : version.longValue();
+                }
+                accepted.add(row);
+            }
+        }
+        return accepted;
+    }
+
+    private void insert(List<ImportRow> rows, ImportContext context) {
+        List<String> passwords = new ArrayList<>(rows.size());
+        rows.forEach(row -> passwords.add(row.get("password")));
+        List<String> hashes = passwordHashingService.encodeAll(passwords);
+
+        // New users first, then replacements; operations keeps the rows in bulk write order
+        List<ImportRow> operations = new ArrayList<>(rows.size());
+        List<User> inserts = new ArrayList<>(rows.size());
+        Map<ImportRow, User> replacements = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            ImportRow row = rows.get(i);
+            User user = new User(row.email(), hashes.get(i), row.get("name"), row.get("employeeId"),
+                    row.get("academyId"), row.get("departmentId"), context.roles.get(row.get("roleId")), null);
+            user.setEnabled(true);
+            if (row.replacedUserId == null) {
+                // Assigned up front so the report can name the id of every user written
+                user.setUserId(new ObjectId().toHexString());
+                inserts.add(user);
+                operations.add(row);
+            } else {
+                // Tokens issued to the old user carry a lower version and stay invalid
+                user.setUserId(row.replacedUserId);
+                user.setSecurityVersion(row.replacedVersion + 1);
+                replacements.put(row, user);
+            }
+            row.userId = user.getUserId();
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        if (!inserts.isEmpty()) {
+            bulk.insert(inserts);
+        }
+        replacements.forEach((row, user) -> {
+            // Only while the old user is still soft-deleted; otherwise the row fails below
+            bulk.replaceOne(new Query(Criteria.where("_id").is(new ObjectId(row.replacedUserId))
+                    .and("enabled").is(false)), user);
+            operations.add(row);
+        });
+
+        BulkWriteResult result = null;
+        try {
+            result = bulk.execute();
+        } catch (BulkOperationException e) {
+            // Unordered: every other row was still written
+            result = e.getResult();
+            for (BulkWriteError error : e.getErrors()) {
+                ImportRow row = operations.get(error.getIndex());
+                row.userId = null;
+                row.error = error.getCode() == DUPLICATE_KEY
+                        ? "Email or Employee ID is already in use."
+                        : "Insert failed: " + error.getMessage();
+            }
+        }
+        if (!replacements.isEmpty()) {
+            confirmReplacements(replacements, result);
+        }
+
+        for (ImportRow row : rows) {
+            if (row.error == null && !emailService.sendTemplate(row.email(), "welcome",
+                    Map.of("name", row.get("name"), "password", row.get("password")), context.locale)) {
+                System.err.println("Failed to queue welcome email to " + row.email());
+            }
+        }
+    }
+
+    // A replacement that matched nothing (the old user was re-enabled meanwhile) is not a write error,
+    // so when fewer documents matched than were replaced, the written ones are found by password hash
+    private void confirmReplacements(Map<ImportRow, User> replacements, BulkWriteResult result) {
+        List<ImportRow> attempted = replacements.keySet().stream().filter(row -> row.error == null).toList();
+        if (result == null || result.getMatchedCount() < attempted.size()) {
+            List<ObjectId> ids = attempted.stream().map(row -> new ObjectId(row.replacedUserId)).toList();
+            Query query = new Query(Criteria.where("_id").in(ids));
+            query.fields().include("password");
+            Set<String> written = new HashSet<>();
+            for (Document user : mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(User.class))) {
+                written.add(user.getString("password"));
+            }
+            for (ImportRow row : attempted) {
+                if (!written.contains(replacements.get(row).getPassword())) {
+                    row.userId = null;
+                    row.error = "Email is already in use by an active user.";
+                }
+            }
+        }
+
+        Map<String, Long> versions = new HashMap<>();
+        for (ImportRow row : replacements.keySet()) {
+            if (row.error == null) {
+                versions.put(row.replacedUserId, row.replacedVersion + 1);
+                userDetailsCache.invalidate(row.email());
+            }
+        }
+        tokenRevocationService.publishSecurityVersions(versions);
+    }
+
+    private static RowSource csvRows(InputStream in) throws IOException {
+        CsvRowReader reader = new CsvRowReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> header = reader.readRow();
+        if (header == null) {
+            return () -> null;
+        }
+        List<String> columns = header.stream().map(String::trim).toList();
+        for (String column : COLUMNS) {
+            if (!columns.contains(column)) {
+                throw new IllegalArgumentException("CSV header is missing the " + column + " column");
+            }
+        }
+        return () -> {
+            List<String> values = reader.readRow();
+            if (values == null) {
+                return null;
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < columns.size() && i < values.size(); i++) {
+                fields.put(columns.get(i), values.get(i));
+            }
+            return fields;
+        };
+    }
+
+    // Expects an array of objects, read one element at a time
+    private static RowSource jsonRows(InputStream in) throws IOException {
+        JsonParser parser = JSON.getFactory().createParser(in);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("JSON import must be an array of users");
+        }
+        return () -> {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY || token == null) {
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("JSON import must be an array of users");
+            }
+            Map<String, String> fields = new HashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value.isScalarValue()) {
+                    fields.put(name, value == JsonToken.VALUE_NULL ? null : parser.getValueAsString());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return fields;
+        };
+    }
+
+    @FunctionalInterface
+    private interface RowSource {
+        // Null once the input is exhausted
+        Map<String, String> next() throws IOException;
+    }
+
+    private static final class ImportContext {
+        private final Map<String, Role> roles;
+        private final Locale locale;
+        private final Set<String> emails = new HashSet<>();
+        private final Set<String> employeeIds = new HashSet<>();
+        private final ImportReport report = new ImportReport();
+
+        private ImportContext(Map<String, Role> roles, Locale locale) {
+            this.roles = roles;
+            this.locale = locale;
+        }
+    }
+
+    private static final class ImportRow {
+        private final int number;
+        private final Map<String, String> fields;
+        private String replacedUserId;
+        private long replacedVersion;
+        private String userId;
+        private String error;
+
+        private ImportRow(int number, Map<String, String> fields) {
+            this.number = number;
+            this.fields = fields;
+        }
+
+        // Trimmed value, or null when blank
+        private String get(String column) {
+            String value = fields.get(column);
+            if (value == null) {
+                return null;
+            }
+            // Passwords are taken as given
+            String trimmed = "password".equals(column) ? value : value.trim();
+            return trimmed.isEmpty() ? null : trimmed;
+        }
+
+        private String email() {
+            return get("email");
+        }
+    }
+}
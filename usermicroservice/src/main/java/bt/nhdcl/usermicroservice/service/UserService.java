@@ -1,5 +1,10 @@
 package bt.nhdcl.usermicroservice.service;
 
+import bt.nhdcl.usermicroservice.dto.BulkUpdateResult;
+import bt.nhdcl.usermicroservice.dto.CursorPage;
+import bt.nhdcl.usermicroservice.dto.UserFilter;
+import bt.nhdcl.usermicroservice.dto.UserSummary;
+import bt.nhdcl.usermicroservice.entity.Role;
 import bt.nhdcl.usermicroservice.entity.User;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -13,12 +18,17 @@ public interface UserService {
 
     User save(User user);
 
-    List<User> getAllUsers();
+    List<UserSummary> getAllUsers();
+
+    // Active users ordered by id, starting after the cursor (null for the first page)
+    CursorPage<UserSummary> getUsersPage(String cursor, Integer size, boolean includeTotal);
 
     Optional<User> getUserById(String id);
 
     Optional<User> getUserByEmail(String email);
 
+    Optional<UserSummary> getUserSummaryByEmail(String email);
+
     void deleteUserById(String id);
 
     boolean isEmailDuplicate(String email);
@@ -27,17 +37,28 @@ public interface UserService {
 
     void updateUserEnabledStatus(String id, boolean enabled);
 
+    // Bulk changes select users by id, by filter or both, and run as a single update
+    BulkUpdateResult updateUsersEnabledStatus(List<String> userIds, UserFilter filter, boolean enabled);
+
+    BulkUpdateResult assignRole(List<String> userIds, UserFilter filter, Role role);
+
+    BulkUpdateResult assignDepartment(List<String> userIds, UserFilter filter, String departmentId);
+
     String uploadUserImage(String id, MultipartFile image) throws IOException;
 
-    boolean generateOtp(String email);
+    // Throws OtpThrottledException when the email or client IP has asked for too many OTPs
+    boolean generateOtp(String email, String clientIp);
 
     boolean validateOtp(String email, String otp);
 
+    // Checks the OTP and removes it, so it can only be used once
+    boolean consumeOtp(String email, String otp);
+
     boolean resetPassword(String email, String newPassword);
 
     boolean changePassword(String email, String oldPassword, String newPassword);
 
-    boolean resendOtp(String email);
+    boolean resendOtp(String email, String clientIp);
 
     User updateUser(String id, User updatedUser);
 
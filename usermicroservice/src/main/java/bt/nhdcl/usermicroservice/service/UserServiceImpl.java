@@ -1,30 +1,47 @@
 package bt.nhdcl.usermicroservice.service;
 
+import bt.nhdcl.usermicroservice.dto.BulkUpdateResult;
+import bt.nhdcl.usermicroservice.dto.CursorPage;
+import bt.nhdcl.usermicroservice.dto.UserFilter;
+import bt.nhdcl.usermicroservice.dto.UserSummary;
+import bt.nhdcl.usermicroservice.entity.Role;
 import bt.nhdcl.usermicroservice.entity.User;
 import bt.nhdcl.usermicroservice.repository.UserRepository;
 import bt.nhdcl.usermicroservice.exception.UserNotFoundException;
 import bt.nhdcl.usermicroservice.exception.FileSizeException;
+import bt.nhdcl.usermicroservice.exception.ServiceBusyException;
 
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.LiteralOperators;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.web.multipart.MultipartFile;
-
 import com.mongodb.client.result.UpdateResult;
 
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
 
 import java.io.IOException;
+import java.security.SecureRandom;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import bt.nhdcl.usermicroservice.security.OtpCheck;
 import bt.nhdcl.usermicroservice.security.OtpDetails;
+import bt.nhdcl.usermicroservice.security.OtpStore;
+import bt.nhdcl.usermicroservice.security.OtpThrottle;
+import bt.nhdcl.usermicroservice.security.TokenRevocationService;
+import bt.nhdcl.usermicroservice.security.UserDetailsCache;
 
 @Service
 public class UserServiceImpl implements UserService {
@@ -33,25 +50,44 @@ public class UserServiceImpl implements UserService {
     private final PasswordEncoder passwordEncoder;
     private final MongoTemplate mongoTemplate;
     private final CloudinaryService cloudinaryService;
-    private final JavaMailSender mailSender;
-    private Map<String, OtpDetails> otpStorage = new HashMap<>();
+    private final EmailService emailService;
+    private final TokenRevocationService tokenRevocationService;
+    private final UserDetailsCache userDetailsCache;
+    private final OtpStore otpStore;
+    private final OtpThrottle otpThrottle;
+
+    @Value("${users.page.default-size:50}")
+    private int defaultPageSize = 50;
+
+    @Value("${users.page.max-size:500}")
+    private int maxPageSize = 500;
 
     private static final int MAX_FILE_SIZE = 1024 * 1024; // 1MB
+    private static final long OTP_VALIDITY = 5 * 60 * 1000; // 5 minutes
+    private static final SecureRandom OTP_RANDOM = new SecureRandom(); // Shared; thread-safe
 
     @Autowired
     public UserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder,
-            MongoTemplate mongoTemplate, CloudinaryService cloudinaryService, JavaMailSender mailSender) {
+            MongoTemplate mongoTemplate, CloudinaryService cloudinaryService, EmailService emailService,
+            TokenRevocationService tokenRevocationService, UserDetailsCache userDetailsCache, OtpStore otpStore,
+            OtpThrottle otpThrottle) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.mongoTemplate = mongoTemplate;
         this.cloudinaryService = cloudinaryService;
-        this.mailSender = mailSender;
+        this.emailService = emailService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.userDetailsCache = userDetailsCache;
+        this.otpStore = otpStore;
+        this.otpThrottle = otpThrottle;
     }
 
     @Override
     public User save(User user) {
         user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userDetailsCache.invalidate(saved.getEmail());
+        return saved;
     }
 
     @Override
@@ -60,31 +96,65 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
-    public List<User> getAllUsers() {
-        return userRepository.findByEnabledTrue();
+    public Optional<UserSummary> getUserSummaryByEmail(String email) {
+        List<UserSummary> users = findSummaries(new Query(Criteria.where("email").is(email)).limit(1));
+        return users.isEmpty() ? Optional.empty() : Optional.of(users.get(0));
     }
 
     @Override
-    public Optional<User> getUserById(String id) {
-        return userRepository.findById(id);
+    public List<UserSummary> getAllUsers() {
+        return findSummaries(new Query(Criteria.where("enabled").is(true)));
     }
 
     @Override
-    public void deleteUserById(String id) {
-        // Check if the user exists
-        if (!userRepository.existsById(id)) {
-            throw new UserNotFoundException("User not found with id: " + id);
+    public CursorPage<UserSummary> getUsersPage(String cursor, Integer size, boolean includeTotal) {
+        int pageSize = size == null ? defaultPageSize : size;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + maxPageSize);
         }
 
-        // Find the user and set the 'enabled' flag to false (soft delete)
-        User user = userRepository.findById(id)
-                .orElseThrow(() -> new UserNotFoundException("User not found with id: " + id));
+        // Keyset pagination: continue after the last id seen instead of skipping rows,
+        // so every page costs the same however deep the client has paged
+        Criteria criteria = Criteria.where("enabled").is(true);
+        if (cursor != null && !cursor.isEmpty()) {
+            if (!ObjectId.isValid(cursor)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            criteria = criteria.and("_id").gt(new ObjectId(cursor));
+        }
 
-        // Perform soft delete by disabling the user
-        user.setEnabled(false);
+        // One extra row tells whether another page follows
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "_id")).limit(pageSize + 1);
+        List<UserSummary> users = findSummaries(query);
 
-        // Save the user with updated enabled status
-        userRepository.save(user);
+        String nextCursor = null;
+        if (users.size() > pageSize) {
+            users = users.subList(0, pageSize);
+            nextCursor = users.get(pageSize - 1).getUserId();
+        }
+
+        Long total = includeTotal
+                ? mongoTemplate.count(new Query(Criteria.where("enabled").is(true)), User.class)
+                : null;
+        return new CursorPage<>(users, nextCursor, total);
+    }
+
+    // Projects only the summary fields and resolves role names with one query for the whole result
+    private List<UserSummary> findSummaries(Query query) {
+        query.fields().include(UserDocuments.SUMMARY_FIELDS);
+        List<Document> users = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(User.class));
+        return UserDocuments.toSummaries(users, mongoTemplate);
+    }
+
+    @Override
+    public Optional<User> getUserById(String id) {
+        return userRepository.findById(id);
+    }
+
+    @Override
+    public void deleteUserById(String id) {
+        // Soft delete: disable the user in one atomic update
+        updateUserEnabledStatus(id, false);
     }
 
     @Override
@@ -104,13 +174,123 @@ public class UserServiceImpl implements UserService {
     @Override
     public void updateUserEnabledStatus(String id, boolean enabled) {
         Query query = new Query(Criteria.where("_id").is(id));
-        Update update = new Update().set("enabled", enabled);
+        Update update = new Update().set("enabled", enabled).inc("securityVersion", 1);
 
-        UpdateResult result = mongoTemplate.updateFirst(query, update, User.class);
+        User user = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                User.class);
 
-        if (result.getMatchedCount() == 0) {
+        if (user == null) {
             throw new UserNotFoundException("User not found with id: " + id);
         }
+        tokenRevocationService.publishSecurityVersion(user.getUserId(), user.getSecurityVersion());
+        userDetailsCache.invalidate(user.getEmail());
+    }
+
+    @Override
+    public BulkUpdateResult updateUsersEnabledStatus(List<String> userIds, UserFilter filter, boolean enabled) {
+        return bulkUpdate(userIds, filter, "enabled", enabled);
+    }
+
+    @Override
+    public BulkUpdateResult assignRole(List<String> userIds, UserFilter filter, Role role) {
+        return bulkUpdate(userIds, filter, "role._id", new ObjectId(role.getRoleId()),
+                "role", new Document("_id", new ObjectId(role.getRoleId())).append("name", role.getName()));
+    }
+
+    @Override
+    public BulkUpdateResult assignDepartment(List<String> userIds, UserFilter filter, String departmentId) {
+        return bulkUpdate(userIds, filter, "departmentId", departmentId);
+    }
+
+    private BulkUpdateResult bulkUpdate(List<String> userIds, UserFilter filter, String field, Object value) {
+        return bulkUpdate(userIds, filter, field, value, field, value);
+    }
+
+    // Sets the field on every selected user with one updateMulti. Users whose compared value
+    // actually changes also get their security version bumped, as their tokens carry the old claims
+    private BulkUpdateResult bulkUpdate(List<String> userIds, UserFilter filter, String comparedField,
+            Object comparedValue, String field, Object value) {
+        Criteria selection = selection(userIds, filter);
+        String users = mongoTemplate.getCollectionName(User.class);
+
+        // The selected users and their versions, read first; the update is limited to them so that
+        // every user it bumps is read back below
+        Query selected = new Query(selection);
+        selected.fields().include("securityVersion");
+        Map<Object, Long> before = new HashMap<>();
+        for (Document user : mongoTemplate.find(selected, Document.class, users)) {
+            before.put(user.get("_id"), securityVersion(user));
+        }
+        if (before.isEmpty()) {
+            return new BulkUpdateResult(0, 0);
+        }
+
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("securityVersion").toValue(ConditionalOperators
+                        .when(ComparisonOperators.valueOf(comparedField).notEqualToValue(comparedValue))
+                        .thenValueOf(ArithmeticOperators.valueOf(
+                                ConditionalOperators.ifNull("securityVersion").then(0L)).add(1))
+                        .otherwiseValueOf("securityVersion"))
+                .set(field).toValue(LiteralOperators.Literal.asLiteral(value));
+        UpdateResult result = mongoTemplate.updateMulti(
+                new Query(new Criteria().andOperator(selection, Criteria.where("_id").in(before.keySet()))),
+                update, User.class);
+
+        // Versions read after the update cover every bump, including users that changed between the
+        // two reads; publishing uses $max, so a version raised by another writer is never lowered
+        Query updated = new Query(Criteria.where("_id").in(before.keySet()));
+        updated.fields().include("email", "securityVersion");
+        Map<String, Long> versions = new HashMap<>();
+        for (Document user : mongoTemplate.find(updated, Document.class, users)) {
+            long version = securityVersion(user);
+            if (version > before.get(user.get("_id"))) {
+                versions.put(UserDocuments.id(user.get("_id")), version);
+                userDetailsCache.invalidate(user.getString("email"));
+            }
+        }
+        tokenRevocationService.publishSecurityVersions(versions);
+        return new BulkUpdateResult(result.getMatchedCount(), result.getModifiedCount());
+    }
+
+    private static long securityVersion(Document user) {
+        Number version = (Number) user.get("securityVersion");
+        return version == null ? 0 : version.longValue();
+    }
+
+    // Ids and filter are combined; at least one of them is required so nothing updates every user by accident
+    private static Criteria selection(List<String> userIds, UserFilter filter) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (userIds != null && !userIds.isEmpty()) {
+            List<ObjectId> ids = new ArrayList<>(userIds.size());
+            for (String userId : userIds) {
+                if (userId == null || !ObjectId.isValid(userId)) {
+                    throw new IllegalArgumentException("Invalid user id: " + userId);
+                }
+                ids.add(new ObjectId(userId));
+            }
+            criteria.add(Criteria.where("_id").in(ids));
+        }
+        if (filter != null) {
+            if (filter.getAcademyId() != null) {
+                criteria.add(Criteria.where("academyId").is(filter.getAcademyId()));
+            }
+            if (filter.getDepartmentId() != null) {
+                criteria.add(Criteria.where("departmentId").is(filter.getDepartmentId()));
+            }
+            if (filter.getRoleId() != null) {
+                if (!ObjectId.isValid(filter.getRoleId())) {
+                    throw new IllegalArgumentException("Invalid role id: " + filter.getRoleId());
+                }
+                criteria.add(Criteria.where("role._id").is(new ObjectId(filter.getRoleId())));
+            }
+            if (filter.getEnabled() != null) {
+                criteria.add(Criteria.where("enabled").is(filter.getEnabled()));
+            }
+        }
+        if (criteria.isEmpty()) {
+            throw new IllegalArgumentException("Select the users by userIds or filter");
+        }
+        return new Criteria().andOperator(criteria);
     }
 
     @Override
@@ -140,74 +320,37 @@ public class UserServiceImpl implements UserService {
     @Override
     public void permanentlyDeleteUser(String userId) {
         userRepository.deleteById(userId);
+        tokenRevocationService.publishUserDeleted(userId);
+        userDetailsCache.invalidateUser(userId);
     }
 
     @Override
-    public boolean generateOtp(String email) {
-        Optional<User> userOptional = userRepository.findByEmail(email);
-        if (userOptional.isEmpty()) {
-            return false; // Return false if user not found
-        }
-
-        try {
-            // Generate OTP
-            String otp = String.format("%06d", new Random().nextInt(999999));
-
-            // Set expiration time (e.g., 5 minutes from now)
-            long expiryTime = System.currentTimeMillis() + (5 * 60 * 1000);
-
-            // Store OTP with expiration
-            otpStorage.put(email, new OtpDetails(otp, expiryTime));
-
-            // Send OTP via email
-            sendOtpEmail(email, otp);
-            return true; // Return true if OTP was successfully generated and sent
-        } catch (Exception e) {
-            return false; // Return false if there was an error
-        }
+    public boolean generateOtp(String email, String clientIp) {
+        return issueOtp(email, clientIp);
     }
 
     @Override
     public boolean validateOtp(String email, String otp) {
-        OtpDetails otpDetails = otpStorage.get(email); // Correct type
+        return checkOtp(email, otp, false);
+    }
 
-        if (otpDetails == null) {
-            return false; // No OTP found for the email
-        }
+    @Override
+    public boolean consumeOtp(String email, String otp) {
+        return checkOtp(email, otp, true);
+    }
 
-        // Check if OTP is expired
-        if (System.currentTimeMillis() > otpDetails.getExpiryTime()) {
-            otpStorage.remove(email); // Remove expired OTP
-            return false;
+    // The store discards the OTP once it has been guessed wrong too often; the user has to request a new one
+    private boolean checkOtp(String email, String otp, boolean consume) {
+        OtpCheck result = otpStore.check(email, otp, otpThrottle.getMaxAttempts(), consume);
+        if (result == OtpCheck.EXHAUSTED) {
+            otpThrottle.recordAttemptsExceeded();
         }
-
-        // Check if OTP matches
-        return otpDetails.getOtp().equals(otp);
+        return result == OtpCheck.MATCHED;
     }
 
     @Override
-    public boolean resendOtp(String email) {
-        Optional<User> userOptional = userRepository.findByEmail(email);
-        if (userOptional.isEmpty()) {
-            return false; // Return false if user not found
-        }
-
-        try {
-            // Generate OTP
-            String otp = String.format("%06d", new Random().nextInt(999999));
-
-            // Set expiration time (e.g., 5 minutes from now)
-            long expiryTime = System.currentTimeMillis() + (5 * 60 * 1000);
-
-            // Store OTP with expiration
-            otpStorage.put(email, new OtpDetails(otp, expiryTime));
-
-            // Send OTP via email
-            sendOtpEmail(email, otp);
-            return true; // Return true if OTP was successfully generated and sent
-        } catch (Exception e) {
-            return false; // Return false if there was an error
-        }
+    public boolean resendOtp(String email, String clientIp) {
+        return issueOtp(email, clientIp);
     }
 
     @Override
@@ -220,46 +363,57 @@ public class UserServiceImpl implements UserService {
             // Encode the new password and set it to the user
             String encodedPassword = passwordEncoder.encode(newPassword);
             user.setPassword(encodedPassword);
+            user.setSecurityVersion(user.getSecurityVersion() + 1);
 
             // Save the user with the updated password
             userRepository.save(user);
+            tokenRevocationService.publishSecurityVersion(user.getUserId(), user.getSecurityVersion());
+            userDetailsCache.invalidate(user.getEmail());
 
             // Return true if the password reset was successful
             return true;
+        } catch (ServiceBusyException e) {
+            throw e; // Let the client retry instead of reporting a failed reset
         } catch (Exception e) {
             // Handle any errors (e.g., user not found or database issues)
             return false; // Return false if something goes wrong
         }
     }
 
-    private void sendOtpEmail(String toEmail, String otp) {
+    private boolean issueOtp(String email, String clientIp) {
+        // Checked before the lookup, so throttled requests cost neither a query nor an email
+        otpThrottle.acquireSend(email, clientIp);
+
+        Optional<User> userOptional = userRepository.findByEmail(email);
+        if (userOptional.isEmpty()) {
+            return false; // Return false if user not found
+        }
+
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true);
-            helper.setTo(toEmail);
-            helper.setSubject("🔐 Your One-Time Password (OTP) for Secure Access");
-
-            String emailContent = "<div style='font-family: Arial, sans-serif; max-width: 600px; padding: 20px; " +
-                    "border: 1px solid #ddd; border-radius: 8px; background-color: #f9f9f9;'>" +
-                    "<h2 style='color: #897462;'>Hello,</h2>" +
-                    "<p style='font-size: 16px;'>You requested a one-time password (OTP) to verify your identity.</p>" +
-                    "<p style='font-size: 18px; font-weight: bold; color: #f9f9f9; text-align: center; " +
-                    "border: 1px solid #305845; padding: 10px; border-radius: 5px; background: #4a7f68;'>" + otp
-                    + "</p>" +
-                    "<p style='font-size: 14px; color: #555;'>Please use this OTP within the next 5 minutes. " +
-                    "Do not share this code with anyone.</p>" +
-                    "<p style='font-size: 14px;'>If you did not request this OTP, please ignore this email or contact our support team.</p>"
-                    +
-                    "<hr style='border: none; border-top: 1px solid #ddd;'/>" +
-                    "<p style='font-size: 12px; color: #777;'>Thank you,<br/><strong>NHDCL</strong></p>" +
-                    "</div>";
-
-            helper.setText(emailContent, true);
-            mailSender.send(message);
-            System.out.println("OTP email sent successfully to " + toEmail);
-        } catch (MessagingException e) {
-            System.err.println("Error sending OTP email: " + e.getMessage());
+            // Generate OTP, valid for 5 minutes
+            OtpDetails otpDetails = new OtpDetails(OTP_RANDOM.nextInt(1000000),
+                    System.currentTimeMillis() + OTP_VALIDITY);
+
+            // Store OTP with expiration; fails when the store is full
+            if (!otpStore.put(email, otpDetails)) {
+                return false;
+            }
+
+            // Send OTP via email
+            return sendOtpEmail(email, otpDetails.getOtp());
+        } catch (Exception e) {
+            return false; // Return false if there was an error
+        }
+    }
+
+    private boolean sendOtpEmail(String toEmail, String otp) {
+        // Queued for background delivery, so the request does not wait on SMTP
+        boolean queued = emailService.sendTemplate(toEmail, "otp",
+                Map.of("otp", otp, "validityMinutes", OTP_VALIDITY / 60000), LocaleContextHolder.getLocale());
+        if (!queued) {
+            System.err.println("Error queueing OTP email to " + toEmail);
         }
+        return queued;
     }
 
     @Override
@@ -276,7 +430,10 @@ public class UserServiceImpl implements UserService {
 
             // Update password
             user.setPassword(passwordEncoder.encode(newPassword));
+            user.setSecurityVersion(user.getSecurityVersion() + 1);
             userRepository.save(user);
+            tokenRevocationService.publishSecurityVersion(user.getUserId(), user.getSecurityVersion());
+            userDetailsCache.invalidate(user.getEmail());
             return true;
         }
         throw new IllegalArgumentException("User not found.");
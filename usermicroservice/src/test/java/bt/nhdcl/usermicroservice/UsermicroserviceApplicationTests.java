@@ -3,7 +3,7 @@ package bt.nhdcl.usermicroservice;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "jwt.secret=context-test-secret-of-at-least-32-bytes")
 class UsermicroserviceApplicationTests {
 
 	@Test
@@ -0,0 +1,57 @@
+package bt.nhdcl.usermicroservice.config;
+
+import bt.nhdcl.usermicroservice.entity.Role;
+import bt.nhdcl.usermicroservice.entity.User;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MongoIndexManagerTest {
+
+    private final MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext());
+
+    private static MongoMappingContext mappingContext() {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+        return mappingContext;
+    }
+
+    private Map<String, IndexDefinition> indexes(Class<?> entityClass) {
+        Map<String, IndexDefinition> indexes = new HashMap<>();
+        resolver.resolveIndexFor(entityClass)
+                .forEach(definition -> indexes.put(MongoIndexManager.indexName(definition), definition));
+        return indexes;
+    }
+
+    @Test
+    void userLookupsAreBackedByIndexes() {
+        Map<String, IndexDefinition> indexes = indexes(User.class);
+
+        assertEquals(true, indexes.get("email").getIndexOptions().get("unique"));
+        assertEquals(true, indexes.get("employeeId").getIndexOptions().get("unique"));
+        assertEquals(new Document("enabled", 1).append("academyId", 1).append("departmentId", 1),
+                indexes.get("enabled_academy_department").getIndexKeys());
+        assertTrue(indexes.containsKey("enabled_id"));
+        assertTrue(indexes.containsKey("role_id"));
+    }
+
+    @Test
+    void roleNamesAreUnique() {
+        assertEquals(true, indexes(Role.class).get("name").getIndexOptions().get("unique"));
+    }
+
+    @Test
+    void everyManagedEntityResolves() {
+        MongoIndexManager.ENTITIES.forEach(this::indexes);
+    }
+}
@@ -0,0 +1,75 @@
+package bt.nhdcl.usermicroservice.entity;
+
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserRoleMappingTest {
+
+    private static final ObjectId ROLE_ID = new ObjectId("65f0000000000000000000aa");
+
+    private MappingMongoConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        DbRefResolver resolver = mock(DbRefResolver.class);
+        Document role = new Document("_id", ROLE_ID).append("name", "Admin").append("description", "Administrators");
+        when(resolver.fetch(any(DBRef.class))).thenReturn(role);
+        when(resolver.bulkFetch(anyList())).thenReturn(List.of(role));
+
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(resolver, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+    }
+
+    @Test
+    void roleIsEmbeddedAsIdAndName() {
+        User user = new User("pema@example.com", "hash", "Pema", "E-1", "A1", "D1",
+                new Role(ROLE_ID.toHexString(), "Admin", "Administrators"), null);
+
+        Document document = new Document();
+        converter.write(user, document);
+
+        assertEquals(new Document("_id", ROLE_ID).append("name", "Admin"), document.get("role"));
+    }
+
+    @Test
+    void legacyRoleReferencesAreStillRead() {
+        Document document = new Document("_id", new ObjectId()).append("email", "pema@example.com")
+                .append("role", new DBRef("roles", ROLE_ID));
+
+        User user = converter.read(User.class, document);
+
+        assertEquals(ROLE_ID.toHexString(), user.getRole().getRoleId());
+        assertEquals("Admin", user.getRole().getName());
+    }
+
+    @Test
+    void embeddedRolesNeedNoLookup() {
+        Document document = new Document("_id", new ObjectId()).append("email", "pema@example.com")
+                .append("role", new Document("_id", ROLE_ID).append("name", "Admin"));
+
+        User user = converter.read(User.class, document);
+
+        assertTrue(user.getRole() != null && "Admin".equals(user.getRole().getName()));
+    }
+}
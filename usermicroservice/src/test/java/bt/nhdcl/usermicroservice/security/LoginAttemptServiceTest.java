@@ -0,0 +1,47 @@
+package bt.nhdcl.usermicroservice.security;
+
+import bt.nhdcl.usermicroservice.config.MongoIndexManager;
+import bt.nhdcl.usermicroservice.exception.LoginThrottledException;
+import bt.nhdcl.usermicroservice.repository.LoginLockoutRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class LoginAttemptServiceTest {
+
+    private static final int MAX_TRACKED_KEYS = 100;
+
+    private final LoginAttemptService loginAttemptService = new LoginAttemptService(3, 1000, 300000, 10, 5,
+            900000, MAX_TRACKED_KEYS, false, mock(LoginLockoutRepository.class), mock(MongoIndexManager.class));
+
+    @Test
+    void trackedKeysStayWithinTheCap() {
+        loginAttemptService.recordFailure("victim@nhdcl.bt", "10.0.0.1");
+        for (int i = 0; i < 5; i++) {
+            loginAttemptService.recordFailure("victim@nhdcl.bt", "10.0.0.1");
+        }
+
+        // A fresh address and email on every request
+        for (int i = 0; i < 10 * MAX_TRACKED_KEYS; i++) {
+            loginAttemptService.recordFailure("user" + i + "@nhdcl.bt", "10.1." + (i / 256) + "." + (i % 256));
+            assertTrue(loginAttemptService.trackedKeys() <= MAX_TRACKED_KEYS + 1);
+        }
+
+        // Active lockouts are the last to be evicted
+        assertThrows(LoginThrottledException.class, () -> loginAttemptService.checkAllowed("other@nhdcl.bt", "10.0.0.1"));
+    }
+
+    @Test
+    void clientIpIsTheHopAddedByTheGateway() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("172.16.0.2");
+        assertEquals("172.16.0.2", ClientIp.of(request));
+
+        request.addHeader("X-Forwarded-For", "1.2.3.4, 203.0.113.7");
+        assertEquals("203.0.113.7", ClientIp.of(request));
+    }
+}
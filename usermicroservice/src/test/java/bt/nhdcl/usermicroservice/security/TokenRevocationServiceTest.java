@@ -0,0 +1,85 @@
+package bt.nhdcl.usermicroservice.security;
+
+import bt.nhdcl.usermicroservice.config.MongoIndexManager;
+import bt.nhdcl.usermicroservice.entity.RevokedToken;
+import bt.nhdcl.usermicroservice.repository.RevokedTokenRepository;
+import bt.nhdcl.usermicroservice.service.JWTUtil;
+import bt.nhdcl.usermicroservice.service.ParsedToken;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenRevocationServiceTest {
+
+    private static final long EXPIRATION = 3600000;
+
+    private RevokedTokenRepository revokedTokenRepository;
+    private UserSecurityVersions userSecurityVersions;
+    private TokenRevocationService tokenRevocationService;
+
+    @BeforeEach
+    void setUp() {
+        revokedTokenRepository = mock(RevokedTokenRepository.class);
+        JWTUtil jwtUtil = mock(JWTUtil.class);
+        when(jwtUtil.getTokenExpiration()).thenReturn(EXPIRATION);
+        userSecurityVersions = new UserSecurityVersions();
+        tokenRevocationService = new TokenRevocationService(revokedTokenRepository, mock(MongoTemplate.class),
+                mock(MongoIndexManager.class), jwtUtil, userSecurityVersions, 1000, 3600000);
+    }
+
+    @Test
+    void aTokenIssuedInTheSecondOfALogoutAllStaysValid() {
+        when(revokedTokenRepository.findByExpiresAtAfter(any())).thenReturn(List.of());
+        tokenRevocationService.revokeAll("user@nhdcl.bt");
+
+        ArgumentCaptor<RevokedToken> saved = ArgumentCaptor.forClass(RevokedToken.class);
+        verify(revokedTokenRepository).save(saved.capture());
+        long second = saved.getValue().getRevokedBefore().getTime();
+        assertEquals(0, second % 1000);
+        assertFalse(tokenRevocationService.isRevoked(token("user@nhdcl.bt", second)));
+        assertTrue(tokenRevocationService.isRevoked(token("user@nhdcl.bt", second - 1000)));
+    }
+
+    @Test
+    void revocationsMadeBeforeStartupApplyBeforeTheFirstSync() {
+        long now = System.currentTimeMillis();
+        when(revokedTokenRepository.findByExpiresAtAfter(any())).thenReturn(List.of(new RevokedToken(
+                "user:user@nhdcl.bt", "user@nhdcl.bt", new Date(now), new Date(now), new Date(now + EXPIRATION))));
+
+        assertTrue(tokenRevocationService.isRevoked(token("user@nhdcl.bt", now - 60000)));
+        assertFalse(tokenRevocationService.isRevoked(token("other@nhdcl.bt", now - 60000)));
+    }
+
+    @Test
+    void securityVersionsPublishedElsewhereReachThisInstance() {
+        long now = System.currentTimeMillis();
+        RevokedToken version = new RevokedToken("sv:user-1", null, null, new Date(now), new Date(now + EXPIRATION));
+        version.setUserId("user-1");
+        version.setSecurityVersion(4L);
+        when(revokedTokenRepository.findByExpiresAtAfter(any())).thenReturn(List.of(version));
+
+        tokenRevocationService.sync();
+
+        assertTrue(userSecurityVersions.isStale("user-1", 3));
+        assertFalse(userSecurityVersions.isStale("user-1", 4));
+    }
+
+    private static ParsedToken token(String subject, long issuedAt) {
+        ParsedToken token = mock(ParsedToken.class);
+        when(token.getSubject()).thenReturn(subject);
+        when(token.getIssuedAt()).thenReturn(new Date(issuedAt));
+        return token;
+    }
+}
@@ -0,0 +1,112 @@
+package bt.nhdcl.usermicroservice.security;
+
+import bt.nhdcl.usermicroservice.entity.Role;
+import bt.nhdcl.usermicroservice.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UserDetailsCacheTest {
+
+    private static final String EMAIL = "staff@nhdcl.bt";
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserDetailsCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new UserDetailsCache(60000, 100, meterRegistry);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void repeatedLookupsHitTheCache() {
+        NhdclUserDetails first = cache.get(EMAIL, this::load);
+        NhdclUserDetails second = cache.get(EMAIL, this::load);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.counter("user.details.cache", "result", "hit").count());
+        assertEquals(1.0, meterRegistry.counter("user.details.cache", "result", "miss").count());
+    }
+
+    @Test
+    void invalidationForcesAReload() {
+        cache.get(EMAIL, this::load);
+        cache.invalidate(EMAIL);
+        cache.get(EMAIL, this::load);
+        cache.invalidateUser("user");
+        cache.get(EMAIL, this::load);
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<NhdclUserDetails>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cache.get(EMAIL, email -> {
+                    await(release);
+                    return load(email);
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<NhdclUserDetails> result : results) {
+                assertEquals(EMAIL, result.get(5, TimeUnit.SECONDS).getUsername());
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void unknownUsersAreNotCached() {
+        for (int i = 0; i < 2; i++) {
+            assertThrows(UsernameNotFoundException.class, () -> cache.get(EMAIL, email -> {
+                loads.incrementAndGet();
+                throw new UsernameNotFoundException("User not found with email: " + email);
+            }));
+        }
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    private NhdclUserDetails load(String email) {
+        loads.incrementAndGet();
+        User user = new User(email, "hash", "Staff", "E-1", "academy", "department",
+                new Role("role", "Admin", null), null);
+        user.setUserId("user");
+        return new NhdclUserDetails(user);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
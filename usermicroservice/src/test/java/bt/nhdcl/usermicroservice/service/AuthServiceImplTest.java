@@ -0,0 +1,107 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.entity.Role;
+import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.exception.LoginThrottledException;
+import bt.nhdcl.usermicroservice.repository.UserRepository;
+import bt.nhdcl.usermicroservice.security.LoginAttemptService;
+import bt.nhdcl.usermicroservice.security.PasswordHashingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class AuthServiceImplTest {
+
+    private static final String EMAIL = "staff@nhdcl.bt";
+    private static final String PASSWORD = "Password";
+    private static final String CLIENT_IP = "10.0.0.1";
+
+    private UserRepository userRepository;
+    private PasswordHashingService passwordEncoder;
+    private AuthServiceImpl authService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        passwordEncoder = new PasswordHashingService("bcrypt", 4, 2, 16, 5000, new SimpleMeterRegistry());
+        LoginAttemptService loginAttemptService = new LoginAttemptService(3, 60000, 300000, 10, 100, 900000,
+                100000, false, null, null);
+        authService = new AuthServiceImpl(userRepository, passwordEncoder, mock(MongoTemplate.class),
+                loginAttemptService);
+    }
+
+    @Test
+    void loginLoadsTheUserOnce() {
+        when(userRepository.findCredentialsByEmail(EMAIL)).thenReturn(Optional.of(user(true)));
+
+        UserDetails userDetails = authService.login(EMAIL, PASSWORD, CLIENT_IP);
+
+        assertEquals(EMAIL, userDetails.getUsername());
+        verify(userRepository, times(1)).findCredentialsByEmail(EMAIL);
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void wrongPasswordIsRejectedAfterOneLookup() {
+        when(userRepository.findCredentialsByEmail(EMAIL)).thenReturn(Optional.of(user(true)));
+
+        assertThrows(RuntimeException.class, () -> authService.login(EMAIL, "wrong", CLIENT_IP));
+
+        verify(userRepository, times(1)).findCredentialsByEmail(EMAIL);
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void disabledUserIsRejectedAfterOneLookup() {
+        when(userRepository.findCredentialsByEmail(EMAIL)).thenReturn(Optional.of(user(false)));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> authService.login(EMAIL, PASSWORD, CLIENT_IP));
+
+        assertEquals("User is disabled or deleted", e.getMessage());
+        verify(userRepository, times(1)).findCredentialsByEmail(EMAIL);
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void unknownEmailIsRejectedAfterOneLookup() {
+        when(userRepository.findCredentialsByEmail(EMAIL)).thenReturn(Optional.empty());
+
+        assertThrows(RuntimeException.class, () -> authService.login(EMAIL, PASSWORD, CLIENT_IP));
+
+        verify(userRepository, times(1)).findCredentialsByEmail(EMAIL);
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void throttledAttemptsSkipTheRepository() {
+        when(userRepository.findCredentialsByEmail(EMAIL)).thenReturn(Optional.of(user(true)));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(RuntimeException.class, () -> authService.login(EMAIL, "wrong", CLIENT_IP));
+        }
+
+        assertThrows(LoginThrottledException.class, () -> authService.login(EMAIL, PASSWORD, CLIENT_IP));
+
+        verify(userRepository, times(4)).findCredentialsByEmail(EMAIL);
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    private User user(boolean enabled) {
+        User user = new User(EMAIL, passwordEncoder.encode(PASSWORD), "Staff", "E-1", "academy", "department",
+                new Role("role", "Admin", null), null);
+        user.setUserId("user");
+        user.setEnabled(enabled);
+        return user;
+    }
+}
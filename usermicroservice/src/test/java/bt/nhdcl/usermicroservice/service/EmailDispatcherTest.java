@@ -0,0 +1,84 @@
+package bt.nhdcl.usermicroservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailDispatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmailDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void failedDeliveriesAreRetriedWithBackoff() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch delivered = new CountDownLatch(1);
+        dispatcher = new EmailDispatcher(message -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("Relay unavailable");
+            }
+            delivered.countDown();
+        }, 10, 1, 5, 10, 100, meterRegistry);
+
+        assertTrue(dispatcher.enqueue(new EmailMessage("staff@nhdcl.bt", "Subject", "<p>Body</p>")));
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+        assertEquals(2.0, meterRegistry.counter("email.retried").count());
+        awaitCount("email.sent", 1.0);
+    }
+
+    @Test
+    void messagesAreDeadLetteredAfterTheLastAttempt() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        dispatcher = new EmailDispatcher(message -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("Mailbox unavailable");
+        }, 10, 1, 3, 10, 100, meterRegistry);
+
+        dispatcher.enqueue(new EmailMessage("staff@nhdcl.bt", "Subject", "<p>Body</p>"));
+
+        awaitCount("email.dead.letters", 1.0);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void aFullQueueRefusesNewMessages() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        dispatcher = new EmailDispatcher(message -> {
+            started.countDown();
+            release.await();
+        }, 1, 1, 1, 10, 100, meterRegistry);
+
+        assertTrue(dispatcher.enqueue(new EmailMessage("a@nhdcl.bt", "Subject", "Body")));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.enqueue(new EmailMessage("b@nhdcl.bt", "Subject", "Body")));
+        assertFalse(dispatcher.enqueue(new EmailMessage("c@nhdcl.bt", "Subject", "Body")));
+
+        assertEquals(1, dispatcher.getQueueDepth());
+        assertEquals(1.0, meterRegistry.counter("email.rejected").count());
+        release.countDown();
+    }
+
+    private void awaitCount(String counter, double expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.counter(counter).count() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, meterRegistry.counter(counter).count());
+    }
+}
@@ -0,0 +1,47 @@
+package bt.nhdcl.usermicroservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Throughput and latency of the email pipeline against the in-process SMTP stand-in,
+ * for a healthy, a slow and a failing relay.
+ *
+ * Run with: mvn test -Dtest=EmailPipelineBenchmark -Dbenchmark=true
+ * Optional: -Dbenchmark.requests=1000 -Dbenchmark.concurrency=50 -Dbenchmark.workers=2
+ *           -Dbenchmark.pooled=true -Dbenchmark.slow-ms=200 -Dbenchmark.failure-rate=0.2
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class EmailPipelineBenchmark {
+
+    private final int requests = Integer.getInteger("benchmark.requests", 1000);
+    private final int concurrency = Integer.getInteger("benchmark.concurrency", 50);
+    private final int workers = Integer.getInteger("benchmark.workers", 2);
+    private final boolean pooled = Boolean.getBoolean("benchmark.pooled");
+
+    @Test
+    void healthyRelay() throws Exception {
+        run("healthy", 0, 0);
+    }
+
+    @Test
+    void slowRelay() throws Exception {
+        run("slow", Long.getLong("benchmark.slow-ms", 200), 0);
+    }
+
+    @Test
+    void failingRelay() throws Exception {
+        run("failing", 0, Double.parseDouble(System.getProperty("benchmark.failure-rate", "0.2")));
+    }
+
+    private void run(String scenario, long messageDelayMillis, double failureRate) throws Exception {
+        try (EmailPipelineHarness harness = new EmailPipelineHarness(pooled, workers, 5, 100)) {
+            harness.server.setMessageDelayMillis(messageDelayMillis);
+            harness.server.setFailureRate(failureRate);
+
+            EmailPipelineHarness.Result result = harness.run(requests, concurrency, 600000);
+            System.out.printf("%-8s %s connection, %d workers, concurrency %d: %s%n", scenario,
+                    pooled ? "pooled" : "per-message", workers, concurrency, result);
+        }
+    }
+}
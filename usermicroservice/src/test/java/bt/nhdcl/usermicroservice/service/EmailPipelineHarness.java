@@ -0,0 +1,163 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.repository.UserRepository;
+import bt.nhdcl.usermicroservice.security.InMemoryOtpStore;
+import bt.nhdcl.usermicroservice.security.OtpThrottle;
+import bt.nhdcl.usermicroservice.security.TokenRevocationService;
+import bt.nhdcl.usermicroservice.security.UserDetailsCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The outbound email pipeline wired end to end against an in-process {@link FakeSmtpServer}:
+ * UserServiceImpl and EmailServiceImpl, the templates, the in-memory queue and either the
+ * JavaMailSender or the pooled delivery. Half the requests send a welcome email, the other
+ * half go through the OTP flow.
+ */
+class EmailPipelineHarness implements AutoCloseable {
+
+    final FakeSmtpServer server;
+    final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MailDelivery delivery;
+    private final EmailDispatcher dispatcher;
+    private final EmailServiceImpl emailService;
+    private final UserServiceImpl userService;
+
+    private final Map<String, Long> requestedAt = new ConcurrentHashMap<>();
+    private final Queue<Long> deliveryLatencies = new ConcurrentLinkedQueue<>();
+    private volatile long lastDelivery;
+
+    EmailPipelineHarness(boolean pooled, int workers, int maxAttempts, long retryBackoffMillis) throws Exception {
+        server = new FakeSmtpServer();
+        server.onMessage(recipient -> {
+            long now = System.nanoTime();
+            Long start = requestedAt.get(recipient);
+            if (start != null) {
+                deliveryLatencies.add(now - start);
+            }
+            lastDelivery = now;
+        });
+
+        if (pooled) {
+            delivery = new PooledSmtpDelivery(new Properties(), "smtp", "localhost", server.getPort(), null, null,
+                    "noreply@nhdcl.bt", workers, 60000, 100, meterRegistry);
+        } else {
+            JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+            mailSender.setHost("localhost");
+            mailSender.setPort(server.getPort());
+            delivery = new JavaMailDelivery(mailSender, "noreply@nhdcl.bt");
+        }
+        dispatcher = new EmailDispatcher(delivery, 100000, workers, maxAttempts, retryBackoffMillis,
+                retryBackoffMillis * 10, meterRegistry);
+        emailService = new EmailServiceImpl(dispatcher, new EmailTemplateEngine("classpath*:templates/email/*.html"));
+
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findByEmail(anyString())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setEmail(invocation.getArgument(0));
+            return Optional.of(user);
+        });
+        userService = new UserServiceImpl(userRepository, mock(PasswordEncoder.class), mock(MongoTemplate.class),
+                mock(CloudinaryService.class), emailService, mock(TokenRevocationService.class),
+                new UserDetailsCache(60000, 100, meterRegistry), new InMemoryOtpStore(100000),
+                new OtpThrottle(0, Integer.MAX_VALUE, 600000, 5, meterRegistry));
+    }
+
+    // Sends the requests from a pool of request threads and waits up to the timeout for every delivery
+    Result run(int requests, int concurrency, long timeoutMillis) throws Exception {
+        int deliveredBefore = server.getMessages();
+        List<Long> requestLatencies = new ArrayList<>();
+        ExecutorService requestThreads = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                int request = i;
+                results.add(requestThreads.submit(() -> request(request)));
+            }
+            for (Future<Long> result : results) {
+                requestLatencies.add(result.get());
+            }
+        } finally {
+            requestThreads.shutdown();
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (server.getMessages() - deliveredBefore < requests && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        int delivered = server.getMessages() - deliveredBefore;
+        double seconds = (Math.max(lastDelivery, start) - start) / 1e9;
+        return new Result(requests, delivered, delivered / Math.max(seconds, 1e-9),
+                percentile(requestLatencies, 0.99), percentile(new ArrayList<>(deliveryLatencies), 0.99),
+                server.getFailures(), meterRegistry.counter("email.dead.letters").count());
+    }
+
+    @Override
+    public void close() throws Exception {
+        dispatcher.shutdown();
+        if (delivery instanceof PooledSmtpDelivery pooled) {
+            pooled.shutdown();
+        }
+        server.close();
+    }
+
+    // Time the request thread spends handing the email over, in nanoseconds
+    private long request(int request) {
+        String email = "staff" + request + "@nhdcl.bt";
+        long start = System.nanoTime();
+        requestedAt.put(email, start);
+        if (request % 2 == 0) {
+            emailService.sendTemplate(email, "welcome", Map.of("name", "Staff " + request, "password", "Temp#1"),
+                    Locale.ENGLISH);
+        } else {
+            userService.generateOtp(email, "10.0.0." + (request % 250));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double percentile(List<Long> nanos, double percentile) {
+        if (nanos.isEmpty()) {
+            return 0;
+        }
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    record Result(int requests, int delivered, double messagesPerSecond, double requestP99Millis,
+            double deliveryP99Millis, int smtpFailures, double deadLetters) {
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%5d/%-5d delivered  %8.1f msg/s  request p99 %7.2f ms  delivery p99 %8.1f ms  "
+                            + "451s %4d  dead letters %3.0f",
+                    delivered, requests, messagesPerSecond, requestP99Millis, deliveryP99Millis, smtpFailures,
+                    deadLetters);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package bt.nhdcl.usermicroservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailPipelineTest {
+
+    @Test
+    void aSlowRelayDoesNotHoldRequestThreads() throws Exception {
+        try (EmailPipelineHarness harness = new EmailPipelineHarness(false, 2, 5, 10)) {
+            harness.server.setMessageDelayMillis(200);
+
+            EmailPipelineHarness.Result result = harness.run(10, 5, 10000);
+
+            assertEquals(10, result.delivered());
+            // Each request only queues its email; delivering it takes at least the 200 ms delay
+            assertTrue(result.requestP99Millis() < 150, result.toString());
+            assertTrue(result.deliveryP99Millis() >= 200, result.toString());
+        }
+    }
+
+    @Test
+    void temporaryFailuresAreRetriedUntilDelivered() throws Exception {
+        try (EmailPipelineHarness harness = new EmailPipelineHarness(true, 2, 20, 5)) {
+            harness.server.setFailureRate(0.3);
+
+            EmailPipelineHarness.Result result = harness.run(20, 4, 10000);
+
+            assertEquals(20, result.delivered(), result.toString());
+            assertEquals(0.0, result.deadLetters());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package bt.nhdcl.usermicroservice.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailTemplateEngineTest {
+
+    private static EmailTemplateEngine engine;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        engine = new EmailTemplateEngine("classpath*:templates/email-test/*.html");
+    }
+
+    @Test
+    void parametersAreEscapedInTheBodyOnly() {
+        EmailTemplateEngine.RenderedEmail email = engine.render("greeting",
+                Map.of("name", "<Tashi & Co>", "code", 42), Locale.ENGLISH);
+
+        assertEquals("Hello <Tashi & Co>", email.getSubject());
+        assertEquals("<p>Hello &lt;Tashi &amp; Co&gt;, your code is 42.</p>\n", email.getHtml());
+    }
+
+    @Test
+    void localisedTemplatesFallBackToTheDefault() {
+        Map<String, Object> model = Map.of("name", "Pema", "code", "7");
+
+        assertEquals("Kuzuzangpo Pema", engine.render("greeting", model, new Locale("dz", "BT")).getSubject());
+        assertEquals("Kuzuzangpo Pema", engine.render("greeting", model, new Locale("dz")).getSubject());
+        assertEquals("Hello Pema", engine.render("greeting", model, Locale.FRENCH).getSubject());
+        assertEquals("Hello Pema", engine.render("greeting", model, null).getSubject());
+    }
+
+    @Test
+    void missingParametersAndUnknownTemplatesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> engine.render("greeting", Map.of("name", "Pema"), null));
+        assertThrows(IllegalArgumentException.class, () -> engine.render("unknown", Map.of(), null));
+    }
+
+    @Test
+    void shippedTemplatesRender() throws Exception {
+        EmailTemplateEngine shipped = new EmailTemplateEngine("classpath*:templates/email/*.html");
+
+        EmailTemplateEngine.RenderedEmail welcome = shipped.render("welcome",
+                Map.of("name", "Pema", "password", "Temp#1"), Locale.ENGLISH);
+        EmailTemplateEngine.RenderedEmail otp = shipped.render("otp",
+                Map.of("otp", "012345", "validityMinutes", 5), Locale.ENGLISH);
+
+        assertTrue(welcome.getSubject().contains("Welcome"));
+        assertTrue(welcome.getHtml().contains("Welcome, Pema!"));
+        assertTrue(welcome.getHtml().contains("Temp#1"));
+        assertTrue(otp.getHtml().contains(">012345</p>"));
+        assertTrue(otp.getHtml().contains("within the next 5 minutes"));
+    }
+}
@@ -0,0 +1,173 @@
+package bt.nhdcl.usermicroservice.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Minimal SMTP server for tests and benchmarks. Counts connections and messages and
+ * can degrade on demand: delay the greeting (standing in for the TLS and AUTH handshake
+ * of a real relay), delay the reply to each message, or fail a share of messages with a
+ * temporary 451 error.
+ */
+class FakeSmtpServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fake-smtp");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger messages = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long handshakeDelayMillis;
+    private volatile long messageDelayMillis;
+    private volatile double failureRate;
+    private volatile Consumer<String> listener = recipient -> {
+    };
+
+    FakeSmtpServer() throws IOException {
+        serverSocket = new ServerSocket(0);
+        executor.execute(this::accept);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    int getMessages() {
+        return messages.get();
+    }
+
+    // Messages refused with a 451 error
+    int getFailures() {
+        return failures.get();
+    }
+
+    void setHandshakeDelayMillis(long handshakeDelayMillis) {
+        this.handshakeDelayMillis = handshakeDelayMillis;
+    }
+
+    // Delay before accepting each message, as a slow relay would
+    void setMessageDelayMillis(long messageDelayMillis) {
+        this.messageDelayMillis = messageDelayMillis;
+    }
+
+    // Share of messages, between 0 and 1, refused with a temporary 451 error
+    void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    // Called with the recipient of every accepted message
+    void onMessage(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    // Closes every open connection, as a relay does when it drops idle clients
+    void dropConnections() throws IOException {
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            sockets.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                connections.incrementAndGet();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+            if (handshakeDelayMillis > 0) {
+                Thread.sleep(handshakeDelayMillis);
+            }
+            reply(out, "220 localhost fake SMTP");
+
+            String recipient = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() < 4 ? line.toUpperCase() : line.substring(0, 4).toUpperCase();
+                switch (command) {
+                    case "EHLO", "HELO" -> reply(out, "250 localhost");
+                    case "MAIL", "RSET", "NOOP" -> reply(out, "250 OK");
+                    case "RCPT" -> {
+                        recipient = line.substring(line.indexOf('<') + 1, line.lastIndexOf('>'));
+                        reply(out, "250 OK");
+                    }
+                    case "DATA" -> {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            // Discard the message body
+                        }
+                        if (messageDelayMillis > 0) {
+                            Thread.sleep(messageDelayMillis);
+                        }
+                        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                            failures.incrementAndGet();
+                            reply(out, "451 4.3.0 Temporary failure, try again later");
+                        } else {
+                            messages.incrementAndGet();
+                            listener.accept(recipient);
+                            reply(out, "250 OK queued");
+                        }
+                    }
+                    case "QUIT" -> {
+                        reply(out, "221 Bye");
+                        return;
+                    }
+                    default -> reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (IOException e) {
+            // Connection dropped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private static void reply(Writer out, String line) throws IOException {
+        out.write(line + "\r\n");
+        out.flush();
+    }
+}
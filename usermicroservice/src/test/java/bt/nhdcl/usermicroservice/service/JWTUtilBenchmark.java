@@ -0,0 +1,96 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.entity.Role;
+import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.security.NhdclUserDetails;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-request cost of authenticating a token through the old
+ * parse-per-claim path with the single-pass {@link JWTUtil#parse(String)} API.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/test.classpath
+ * java -cp "target/test-classes:target/classes:$(cat target/test.classpath)"
+ * bt.nhdcl.usermicroservice.service.JWTUtilBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JWTUtilBenchmark {
+
+    private JWTUtil jwtUtil;
+    private UserDetails userDetails;
+    private String secret;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        // With HS256 the key service never touches its repository, so none is needed
+        JwtKeyService jwtKeyService = new JwtKeyService(null, 604800000, 3600000, 900, "HS256", "");
+        secret = "benchmark-secret-of-at-least-32-bytes";
+        jwtUtil = new JWTUtil(jwtKeyService, "HS256", secret, "");
+
+        User user = new User("bench@nhdcl.bt", "hash", "Bench", "E-1", "academy", "department",
+                new Role("role", "Admin", null), null);
+        user.setUserId("user");
+        user.setEnabled(true);
+        userDetails = new NhdclUserDetails(user);
+        token = jwtUtil.generateToken(userDetails);
+    }
+
+    // What the filter used to do: extractUsername, then validateToken parsing twice more,
+    // each time building a new key and parser
+    @Benchmark
+    public boolean legacyThreeParses() {
+        String username = legacyClaims().getSubject();
+        String validatedUsername = legacyClaims().getSubject();
+        boolean expired = legacyClaims().getExpiration().before(new Date());
+        return username.equals(userDetails.getUsername()) && validatedUsername.equals(username) && !expired;
+    }
+
+    @Benchmark
+    public boolean singlePass() {
+        ParsedToken parsedToken = jwtUtil.parse(token);
+        return jwtUtil.validateToken(parsedToken, userDetails);
+    }
+
+    private Claims legacyClaims() {
+        Key key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        return Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JWTUtilBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,78 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.entity.SigningKey;
+import bt.nhdcl.usermicroservice.repository.SigningKeyRepository;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JWTUtilTest {
+
+    private static final String SECRET = "test-secret-of-at-least-thirty-two-bytes";
+
+    private JwtKeyService jwtKeyService;
+
+    @BeforeEach
+    void setUp() {
+        List<SigningKey> stored = new ArrayList<>();
+        SigningKeyRepository signingKeyRepository = mock(SigningKeyRepository.class);
+        when(signingKeyRepository.insert(any(SigningKey.class))).thenAnswer(invocation -> {
+            stored.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(signingKeyRepository.findByExpiresAtAfterOrderByActivatesAtDesc(any())).thenAnswer(invocation -> stored);
+        jwtKeyService = new JwtKeyService(signingKeyRepository, 604800000, 3600000, 900, "RS256",
+                Base64.getEncoder().encodeToString(new byte[32]));
+    }
+
+    private String hmacToken() {
+        return Jwts.builder()
+                .setSubject("admin@nhdcl.bt")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 60000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+
+    @Test
+    void rs256RejectsTokensWithoutKeyId() {
+        JWTUtil jwtUtil = new JWTUtil(jwtKeyService, "RS256", SECRET, "");
+
+        assertThrows(JwtException.class, () -> jwtUtil.parse(hmacToken()));
+    }
+
+    @Test
+    void rs256AcceptsHmacTokensOnlyUntilTheCutoff() {
+        String open = Instant.now().plusSeconds(600).toString();
+        assertEquals("admin@nhdcl.bt", new JWTUtil(jwtKeyService, "RS256", SECRET, open).parse(hmacToken()).getSubject());
+
+        String closed = Instant.now().minusSeconds(1).toString();
+        JWTUtil afterCutoff = new JWTUtil(jwtKeyService, "RS256", SECRET, closed);
+        assertThrows(JwtException.class, () -> afterCutoff.parse(hmacToken()));
+
+        // A window longer than one token lifetime is refused at startup
+        String tooLong = Instant.now().plusSeconds(7200).toString();
+        assertThrows(IllegalStateException.class, () -> new JWTUtil(jwtKeyService, "RS256", SECRET, tooLong));
+    }
+
+    @Test
+    void hs256NeedsAConfiguredSecret() {
+        assertThrows(IllegalStateException.class, () -> new JWTUtil(jwtKeyService, "HS256", "", ""));
+        assertThrows(IllegalStateException.class, () -> new JWTUtil(jwtKeyService, "HS256", "short", ""));
+    }
+}
@@ -0,0 +1,89 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.entity.SigningKey;
+import bt.nhdcl.usermicroservice.repository.SigningKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JwtKeyServiceTest {
+
+    private static final String ENCRYPTION_KEY = Base64.getEncoder().encodeToString(new byte[32]);
+
+    private final Map<String, SigningKey> stored = new ConcurrentHashMap<>();
+    private SigningKeyRepository signingKeyRepository;
+
+    @BeforeEach
+    void setUp() {
+        signingKeyRepository = mock(SigningKeyRepository.class);
+        when(signingKeyRepository.insert(any(SigningKey.class))).thenAnswer(invocation -> {
+            SigningKey key = invocation.getArgument(0);
+            if (stored.putIfAbsent(key.getKid(), key) != null) {
+                throw new DuplicateKeyException("E11000 duplicate key " + key.getKid());
+            }
+            return key;
+        });
+        when(signingKeyRepository.findByExpiresAtAfterOrderByActivatesAtDesc(any())).thenAnswer(invocation -> {
+            Date now = invocation.getArgument(0);
+            return stored.values().stream()
+                    .filter(key -> key.getExpiresAt().after(now))
+                    .sorted(Comparator.comparing(SigningKey::getActivatesAt).reversed())
+                    .toList();
+        });
+    }
+
+    private JwtKeyService service(String algorithm) {
+        return new JwtKeyService(signingKeyRepository, 604800000, 3600000, 900, algorithm, ENCRYPTION_KEY);
+    }
+
+    @Test
+    void instancesRotatingTogetherShareOneKey() {
+        JwtKeyService first = service("RS256");
+        JwtKeyService second = service("RS256");
+
+        JwtKeyService.LoadedKey signing = first.currentSigningKey();
+        assertEquals(signing.getKid(), second.currentSigningKey().getKid());
+        assertEquals(1, stored.size());
+
+        // Stored encrypted, and still usable after a reload
+        SigningKey key = stored.get(signing.getKid());
+        assertTrue(key.getPrivateKey().startsWith("aes-gcm:"));
+        assertFalse(key.getPrivateKey().contains(Base64.getEncoder().encodeToString(signing.getPrivateKey().getEncoded())));
+        assertEquals(signing.getPrivateKey(), service("RS256").currentSigningKey().getPrivateKey());
+        assertNotNull(second.verificationKey(signing.getKid()));
+    }
+
+    @Test
+    void hs256NeverCreatesKeys() {
+        JwtKeyService disabled = new JwtKeyService(signingKeyRepository, 604800000, 3600000, 900, "HS256", "");
+
+        assertNull(disabled.verificationKey("forged"));
+        assertEquals(List.of(), disabled.jwks().get("keys"));
+        verify(signingKeyRepository, never()).insert(any(SigningKey.class));
+    }
+
+    @Test
+    void rs256RequiresAnEncryptionKey() {
+        assertThrows(IllegalStateException.class,
+                () -> new JwtKeyService(signingKeyRepository, 604800000, 3600000, 900, "RS256", ""));
+    }
+}
@@ -0,0 +1,55 @@
+package bt.nhdcl.usermicroservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.Properties;
+
+/**
+ * Compares one SMTP connection per email with the pooled delivery, against a local
+ * stand-in whose greeting is delayed to mimic the STARTTLS and AUTH handshake.
+ *
+ * Run with: mvn test -Dtest=PooledSmtpDeliveryBenchmark -Dbenchmark=true
+ * Optional: -Dbenchmark.messages=200 -Dbenchmark.handshake-ms=50
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class PooledSmtpDeliveryBenchmark {
+
+    @Test
+    void perMessageConnectionsVersusPool() throws Exception {
+        int messages = Integer.getInteger("benchmark.messages", 200);
+        long handshake = Long.getLong("benchmark.handshake-ms", 50);
+
+        try (FakeSmtpServer server = new FakeSmtpServer()) {
+            server.setHandshakeDelayMillis(handshake);
+
+            JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+            mailSender.setHost("localhost");
+            mailSender.setPort(server.getPort());
+            MailDelivery perMessage = new JavaMailDelivery(mailSender, "noreply@nhdcl.bt");
+            report("per-message connection", perMessage, messages, server);
+
+            PooledSmtpDelivery pooled = new PooledSmtpDelivery(new Properties(), "smtp", "localhost",
+                    server.getPort(), null, null, "noreply@nhdcl.bt", 1, 60000, 100, new SimpleMeterRegistry());
+            try {
+                report("pooled connection", pooled, messages, server);
+            } finally {
+                pooled.shutdown();
+            }
+        }
+    }
+
+    private static void report(String name, MailDelivery delivery, int messages, FakeSmtpServer server)
+            throws Exception {
+        int connectionsBefore = server.getConnections();
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            delivery.deliver(new EmailMessage("staff" + i + "@nhdcl.bt", "Subject", "<p>Body</p>"));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-24s %5d messages in %6.2f s  %8.1f msg/s  %4d connections%n", name, messages,
+                seconds, messages / seconds, server.getConnections() - connectionsBefore);
+    }
+}
@@ -0,0 +1,88 @@
+package bt.nhdcl.usermicroservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PooledSmtpDeliveryTest {
+
+    private FakeSmtpServer server;
+    private PooledSmtpDelivery delivery;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeSmtpServer();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (delivery != null) {
+            delivery.shutdown();
+        }
+        server.close();
+    }
+
+    @Test
+    void consecutiveMessagesShareOneConnection() throws Exception {
+        delivery = delivery(60000, 100);
+
+        for (int i = 0; i < 10; i++) {
+            delivery.deliver(message(i));
+        }
+
+        assertEquals(10, server.getMessages());
+        assertEquals(1, server.getConnections());
+    }
+
+    @Test
+    void connectionsAreReplacedAfterTheMessageLimit() throws Exception {
+        delivery = delivery(60000, 3);
+
+        for (int i = 0; i < 7; i++) {
+            delivery.deliver(message(i));
+        }
+
+        assertEquals(7, server.getMessages());
+        assertEquals(3, server.getConnections());
+    }
+
+    @Test
+    void idleConnectionsAreClosed() throws Exception {
+        delivery = delivery(50, 100);
+        delivery.deliver(message(1));
+        assertEquals(1, delivery.getIdleConnections());
+
+        Thread.sleep(100);
+        delivery.closeIdleConnections();
+        assertEquals(0, delivery.getIdleConnections());
+
+        delivery.deliver(message(2));
+        assertEquals(2, server.getConnections());
+    }
+
+    @Test
+    void aDroppedConnectionIsReopenedAndTheMessageSent() throws Exception {
+        delivery = delivery(60000, 100);
+        delivery.deliver(message(1));
+
+        server.dropConnections();
+        delivery.deliver(message(2));
+
+        assertEquals(2, server.getMessages());
+        assertEquals(2, server.getConnections());
+    }
+
+    private PooledSmtpDelivery delivery(long idleTimeout, int maxMessagesPerConnection) {
+        return new PooledSmtpDelivery(new Properties(), "smtp", "localhost", server.getPort(), null, null,
+                "noreply@nhdcl.bt", 2, idleTimeout, maxMessagesPerConnection, new SimpleMeterRegistry());
+    }
+
+    private static EmailMessage message(int i) {
+        return new EmailMessage("staff" + i + "@nhdcl.bt", "Subject " + i, "<p>Body " + i + "</p>");
+    }
+}
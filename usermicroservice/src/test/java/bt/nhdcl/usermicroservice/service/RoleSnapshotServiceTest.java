@@ -0,0 +1,81 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.security.NhdclUserDetails;
+import bt.nhdcl.usermicroservice.security.TokenRevocationService;
+import bt.nhdcl.usermicroservice.security.UserDetailsCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoleSnapshotServiceTest {
+
+    @Test
+    void removingARoleUnsetsItAndPublishesBumpedVersions() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+        TokenRevocationService tokenRevocationService = mock(TokenRevocationService.class);
+        UserDetailsCache userDetailsCache = new UserDetailsCache(60000, 100, new SimpleMeterRegistry());
+        RoleSnapshotService service = new RoleSnapshotService(mongoTemplate, userDetailsCache,
+                tokenRevocationService, 500);
+
+        ObjectId roleId = new ObjectId();
+        ObjectId userId = new ObjectId();
+        // Holders of the role, then their versions after the update, then nobody left holding it
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("users"))).thenReturn(
+                List.of(new Document("_id", userId)),
+                List.of(new Document("_id", userId).append("email", "a@nhdcl.bt").append("securityVersion", 4L)),
+                List.of());
+
+        User user = new User("a@nhdcl.bt", "hash", "A", "E-1", null, null, null, null);
+        userDetailsCache.get("a@nhdcl.bt", email -> new NhdclUserDetails(user));
+        assertEquals(1, userDetailsCache.size());
+
+        service.removeRole(roleId.toHexString());
+
+        ArgumentCaptor<Query> selection = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<AggregationUpdate> update = ArgumentCaptor.forClass(AggregationUpdate.class);
+        verify(mongoTemplate, times(1)).updateMulti(selection.capture(), update.capture(), eq("users"));
+        String criteria = selection.getValue().getQueryObject().toJson();
+        assertTrue(criteria.contains(roleId.toHexString()), criteria);
+        assertTrue(criteria.contains(userId.toHexString()), criteria);
+        String pipeline = update.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).toString();
+        assertTrue(pipeline.contains("$unset"), pipeline);
+        assertTrue(pipeline.contains("securityVersion"), pipeline);
+
+        verify(tokenRevocationService).publishSecurityVersions(Map.of(userId.toHexString(), 4L));
+        assertEquals(0, userDetailsCache.size());
+    }
+
+    @Test
+    void ignoresInvalidRoleIds() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        RoleSnapshotService service = new RoleSnapshotService(mongoTemplate,
+                new UserDetailsCache(60000, 100, new SimpleMeterRegistry()), mock(TokenRevocationService.class), 500);
+
+        service.removeRole("not-an-id");
+
+        verify(mongoTemplate, never()).updateMulti(any(Query.class), any(UpdateDefinition.class), anyString());
+    }
+}
@@ -0,0 +1,65 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.dto.UserSummary;
+import bt.nhdcl.usermicroservice.entity.Role;
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserDocumentsTest {
+
+    @Test
+    void embeddedRolesNeedNoLookup() {
+        ObjectId admin = new ObjectId();
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+        List<UserSummary> summaries = UserDocuments.toSummaries(List.of(
+                user("a@example.com", new Document("_id", admin).append("name", "Admin"))), mongoTemplate);
+
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Document.class), any(String.class));
+        assertEquals(admin.toHexString(), summaries.get(0).getRole().getRoleId());
+        assertEquals("Admin", summaries.get(0).getRole().getName());
+    }
+
+    @Test
+    void legacyRoleNamesAreLoadedOnceForAllUsers() {
+        ObjectId admin = new ObjectId();
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getCollectionName(Role.class)).thenReturn("roles");
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("roles")))
+                .thenReturn(List.of(new Document("_id", admin).append("name", "Admin")));
+
+        List<UserSummary> summaries = UserDocuments.toSummaries(List.of(
+                user("a@example.com", new DBRef("roles", admin)),
+                user("b@example.com", new Document("$ref", "roles").append("$id", admin)),
+                user("c@example.com", null)), mongoTemplate);
+
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(Document.class), eq("roles"));
+        assertEquals(3, summaries.size());
+        assertEquals("Admin", summaries.get(0).getRole().getName());
+        assertEquals(admin.toHexString(), summaries.get(1).getRole().getRoleId());
+        assertEquals("Admin", summaries.get(1).getRole().getName());
+        assertNull(summaries.get(2).getRole());
+        assertEquals("b@example.com", summaries.get(1).getEmail());
+    }
+
+    private static Document user(String email, Object role) {
+        return new Document("_id", new ObjectId()).append("email", email).append("enabled", true)
+                .append("role", role);
+    }
+}
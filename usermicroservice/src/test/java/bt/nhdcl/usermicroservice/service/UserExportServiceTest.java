@@ -0,0 +1,66 @@
+package bt.nhdcl.usermicroservice.service;
+
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UserExportServiceTest {
+
+    private static final ObjectId USER_ID = new ObjectId("65f000000000000000000001");
+    private static final ObjectId ROLE_ID = new ObjectId("65f0000000000000000000aa");
+
+    private static Document user() {
+        return new Document("_id", USER_ID)
+                .append("employeeId", "E-1")
+                .append("email", "pema@example.com")
+                .append("name", "Wangmo, \"Pema\"")
+                .append("enabled", true)
+                .append("academyId", "A1")
+                .append("role", new DBRef("roles", ROLE_ID));
+    }
+
+    private static String export(UserExportService.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UserExportService.write(List.of(user()).iterator(), format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void csvQuotesFieldsThatNeedIt() throws Exception {
+        assertEquals("userId,employeeId,email,name,enabled,academyId,departmentId,roleId,image\r\n"
+                + USER_ID.toHexString() + ",E-1,pema@example.com,\"Wangmo, \"\"Pema\"\"\",true,A1,,"
+                + ROLE_ID.toHexString() + ",\r\n", export(UserExportService.Format.CSV));
+    }
+
+    @Test
+    void ndjsonWritesOneObjectPerLine() throws Exception {
+        assertEquals("{\"userId\":\"" + USER_ID.toHexString() + "\",\"employeeId\":\"E-1\","
+                + "\"email\":\"pema@example.com\",\"name\":\"Wangmo, \\\"Pema\\\"\",\"enabled\":true,"
+                + "\"academyId\":\"A1\",\"departmentId\":null,\"roleId\":\"" + ROLE_ID.toHexString() + "\","
+                + "\"image\":null}\n", export(UserExportService.Format.NDJSON));
+    }
+
+    @Test
+    void ndjsonFlushesTheStreamOnceForAllUsers() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                flushes.incrementAndGet();
+            }
+        };
+        UserExportService.write(Collections.nCopies(1000, user()).iterator(), UserExportService.Format.NDJSON, out);
+
+        assertEquals(1, flushes.get());
+        assertEquals(1000, out.toString(StandardCharsets.UTF_8).split("\n").length);
+    }
+}
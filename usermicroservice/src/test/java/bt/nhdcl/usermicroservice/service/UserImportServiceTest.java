@@ -0,0 +1,175 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.dto.ImportReport;
+import bt.nhdcl.usermicroservice.entity.Role;
+import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.security.PasswordHashingService;
+import bt.nhdcl.usermicroservice.security.TokenRevocationService;
+import bt.nhdcl.usermicroservice.security.UserDetailsCache;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserImportServiceTest {
+
+    private static final String HEADER = "email,password,name,employeeId,academyId,departmentId,roleId\n";
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulk;
+    private TokenRevocationService tokenRevocationService;
+    private UserImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        bulk = mock(BulkOperations.class);
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)).thenReturn(bulk);
+        when(bulk.insert(anyList())).thenReturn(bulk);
+
+        tokenRevocationService = mock(TokenRevocationService.class);
+        RoleService roleService = mock(RoleService.class);
+        when(roleService.getAllRoles()).thenReturn(List.of(new Role("staff", "Staff", null)));
+        EmailService emailService = mock(EmailService.class);
+        when(emailService.sendTemplate(anyString(), anyString(), anyMap(), any())).thenReturn(true);
+
+        PasswordHashingService passwordHashingService = new PasswordHashingService("bcrypt", 4, 2, 16, 5000,
+                new SimpleMeterRegistry());
+        importService = new UserImportService(mongoTemplate, passwordHashingService, roleService,
+                tokenRevocationService, mock(UserDetailsCache.class), emailService, 3);
+    }
+
+    private ImportReport importCsv(String csv) throws Exception {
+        return importService.importUsers(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                UserImportService.Format.CSV, Locale.ENGLISH);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rowsAreCheckedAndInsertedInBatches() throws Exception {
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("users")))
+                .thenReturn(List.of(new Document("email", "taken@example.com").append("enabled", true)));
+
+        ImportReport report = importCsv(HEADER
+                + "a@example.com,Secret#1,\"Dorji, Tashi\",E1,A1,D1,staff\n"
+                + "taken@example.com,Secret#1,Taken,E2,A1,D1,staff\n"
+                + "a@example.com,Secret#1,Again,E3,A1,D1,staff\n"
+                + "b@example.com,Secret#1,Pema,E4,A1,D1,unknown\n"
+                + "c@example.com,,Karma,E5,A1,D1,staff\n"
+                + "d@example.com,Secret#1,Sonam,E6,A1,D1,staff\n");
+
+        assertEquals(6, report.getTotal());
+        assertEquals(2, report.getCreated());
+        assertEquals(List.of("CREATED", "FAILED", "FAILED", "FAILED", "FAILED", "CREATED"),
+                report.getRows().stream().map(ImportReport.RowResult::getStatus).toList());
+        assertEquals("Email is already in use by an active user.", report.getRows().get(1).getMessage());
+        assertEquals("Email appears more than once in the import", report.getRows().get(2).getMessage());
+        assertEquals("Role not found", report.getRows().get(3).getMessage());
+        assertEquals("Missing password", report.getRows().get(4).getMessage());
+        assertNotNull(report.getRows().get(0).getUserId());
+
+        // Two batches of three rows: one existence query and one bulk insert each
+        verify(mongoTemplate, times(2)).find(any(Query.class), eq(Document.class), eq("users"));
+        ArgumentCaptor<List<User>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulk, times(2)).insert(inserted.capture());
+        User first = inserted.getAllValues().get(0).get(0);
+        assertEquals("Dorji, Tashi", first.getName());
+        assertEquals("Staff", first.getRole().getName());
+        assertTrue(first.getPassword().startsWith("{bcrypt}"));
+    }
+
+    @Test
+    void aParseErrorAfterTheFirstBatchEndsThePartialReport() throws Exception {
+        String rows = HEADER
+                + "a@example.com,Secret#1,A,E1,A1,D1,staff\n"
+                + "b@example.com,Secret#1,B,E2,A1,D1,staff\n"
+                + "c@example.com,Secret#1,C,E3,A1,D1,staff\n"
+                + "d@example.com,Secret#1,D,E4,A1,D1,staff\n";
+
+        ImportReport report = importCsv(rows + "e@example.com,Secret#1,\"E,E5,A1,D1,staff\n");
+
+        assertEquals(5, report.getTotal());
+        assertEquals(4, report.getCreated());
+        assertEquals(ImportReport.FAILED, report.getRows().get(4).getStatus());
+        assertEquals(5, report.getRows().get(4).getRow());
+        verify(bulk, times(2)).insert(anyList());
+
+        // Nothing was written yet, so the upload is rejected as a whole
+        assertThrows(IllegalArgumentException.class,
+                () -> importCsv(HEADER + "f@example.com,Secret#1,\"F,E6,A1,D1,staff\n"));
+        verify(bulk, times(2)).insert(anyList());
+    }
+
+    @Test
+    void aSoftDeletedUserIsReplacedInTheSameBulkWrite() throws Exception {
+        ObjectId deleted = new ObjectId();
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("users"))).thenReturn(List.of(
+                new Document("_id", deleted).append("email", "a@example.com").append("enabled", false)
+                        .append("securityVersion", 2L)));
+        when(bulk.replaceOne(any(Query.class), any())).thenReturn(bulk);
+        when(bulk.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+
+        ImportReport report = importCsv(HEADER + "a@example.com,Secret#1,Pema,E1,A1,D1,staff\n");
+
+        assertEquals(1, report.getCreated());
+        assertEquals(deleted.toHexString(), report.getRows().get(0).getUserId());
+        ArgumentCaptor<User> replacement = ArgumentCaptor.forClass(User.class);
+        verify(bulk).replaceOne(any(Query.class), replacement.capture());
+        assertEquals(3L, replacement.getValue().getSecurityVersion());
+        verify(bulk, never()).insert(anyList());
+        verify(tokenRevocationService).publishSecurityVersions(Map.of(deleted.toHexString(), 3L));
+    }
+
+    @Test
+    void jsonRowsRejectedByTheInsertAreReported() throws Exception {
+        BulkWriteError duplicate = new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0);
+        when(bulk.execute()).thenThrow(new BulkOperationException("duplicate",
+                new MongoBulkWriteException(BulkWriteResult.unacknowledged(), List.of(duplicate), null,
+                        new ServerAddress(), Set.of())));
+
+        String json = "[{\"email\":\"a@example.com\",\"password\":\"Secret#1\",\"name\":\"Pema\",\"employeeId\":7,"
+                + "\"academyId\":\"A1\",\"departmentId\":\"D1\",\"roleId\":\"staff\",\"extra\":{\"x\":1}},"
+                + "{\"email\":\"b@example.com\",\"password\":\"Secret#1\",\"name\":\"Karma\",\"employeeId\":\"E8\","
+                + "\"academyId\":\"A1\",\"departmentId\":\"D1\",\"roleId\":\"staff\"}]";
+        ImportReport report = importService.importUsers(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                UserImportService.Format.JSON, Locale.ENGLISH);
+
+        assertEquals(1, report.getCreated());
+        assertEquals("Email or Employee ID is already in use.", report.getRows().get(0).getMessage());
+        assertEquals("CREATED", report.getRows().get(1).getStatus());
+    }
+}
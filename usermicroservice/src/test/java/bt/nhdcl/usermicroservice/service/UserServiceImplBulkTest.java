@@ -0,0 +1,127 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.dto.BulkUpdateResult;
+import bt.nhdcl.usermicroservice.dto.UserFilter;
+import bt.nhdcl.usermicroservice.config.MongoIndexManager;
+import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.repository.RevokedTokenRepository;
+import bt.nhdcl.usermicroservice.repository.UserRepository;
+import bt.nhdcl.usermicroservice.security.InMemoryOtpStore;
+import bt.nhdcl.usermicroservice.security.OtpThrottle;
+import bt.nhdcl.usermicroservice.security.TokenRevocationService;
+import bt.nhdcl.usermicroservice.security.UserDetailsCache;
+import bt.nhdcl.usermicroservice.security.UserSecurityVersions;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserServiceImplBulkTest {
+
+    private MongoTemplate mongoTemplate;
+    private UserSecurityVersions userSecurityVersions;
+    private UserServiceImpl userService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+        userSecurityVersions = new UserSecurityVersions();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        userService = new UserServiceImpl(mock(UserRepository.class), mock(PasswordEncoder.class), mongoTemplate,
+                mock(CloudinaryService.class), mock(EmailService.class),
+                new TokenRevocationService(mock(RevokedTokenRepository.class), mock(MongoTemplate.class),
+                        mock(MongoIndexManager.class), mock(JWTUtil.class), userSecurityVersions, 1000, 3600000),
+                new UserDetailsCache(60000, 100, meterRegistry), new InMemoryOtpStore(100),
+                new OtpThrottle(0, Integer.MAX_VALUE, 600000, 5, meterRegistry));
+    }
+
+    @Test
+    void disablesSelectionWithOneUpdateAndBumpsChangedUsers() {
+        ObjectId changed = new ObjectId();
+        ObjectId unchanged = new ObjectId();
+        // The selection before the update, then the same users read back after it
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("users"))).thenReturn(
+                List.of(new Document("_id", changed).append("securityVersion", 3L), new Document("_id", unchanged)),
+                List.of(new Document("_id", changed).append("email", "a@nhdcl.bt").append("securityVersion", 4L),
+                        new Document("_id", unchanged).append("email", "b@nhdcl.bt")));
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(User.class)))
+                .thenReturn(UpdateResult.acknowledged(2, 1L, null));
+
+        UserFilter filter = new UserFilter();
+        filter.setAcademyId("academy-1");
+        BulkUpdateResult result = userService.updateUsersEnabledStatus(
+                List.of(changed.toHexString(), unchanged.toHexString()), filter, false);
+
+        assertEquals(2, result.getMatched());
+        assertEquals(1, result.getModified());
+
+        ArgumentCaptor<Query> selection = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<AggregationUpdate> update = ArgumentCaptor.forClass(AggregationUpdate.class);
+        verify(mongoTemplate, times(1)).updateMulti(selection.capture(), update.capture(), eq(User.class));
+        String criteria = selection.getValue().getQueryObject().toJson();
+        assertTrue(criteria.contains("academy-1"));
+        assertTrue(criteria.contains(unchanged.toHexString()));
+        String pipeline = update.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).toString();
+        assertTrue(pipeline.contains("$ne"), pipeline);
+
+        // Tokens issued before the change no longer pass, those of untouched users still do
+        assertTrue(userSecurityVersions.isStale(changed.toHexString(), 3));
+        assertFalse(userSecurityVersions.isStale(changed.toHexString(), 4));
+        assertFalse(userSecurityVersions.isStale(unchanged.toHexString(), 0));
+    }
+
+    @Test
+    void publishesVersionsReadAfterTheUpdate() {
+        ObjectId bumpedMeanwhile = new ObjectId();
+        ObjectId changedMeanwhile = new ObjectId();
+        // The first differs already but is bumped again by another writer; the second starts to differ
+        // only after the first read. Both must be published with their final versions
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("users"))).thenReturn(
+                List.of(new Document("_id", bumpedMeanwhile).append("securityVersion", 5L),
+                        new Document("_id", changedMeanwhile)),
+                List.of(new Document("_id", bumpedMeanwhile).append("email", "a@nhdcl.bt").append("securityVersion", 7L),
+                        new Document("_id", changedMeanwhile).append("email", "b@nhdcl.bt").append("securityVersion", 1L)));
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(User.class)))
+                .thenReturn(UpdateResult.acknowledged(2, 2L, null));
+
+        userService.assignDepartment(List.of(bumpedMeanwhile.toHexString(), changedMeanwhile.toHexString()),
+                null, "department-1");
+
+        assertTrue(userSecurityVersions.isStale(bumpedMeanwhile.toHexString(), 6));
+        assertFalse(userSecurityVersions.isStale(bumpedMeanwhile.toHexString(), 7));
+        assertTrue(userSecurityVersions.isStale(changedMeanwhile.toHexString(), 0));
+    }
+
+    @Test
+    void rejectsAnEmptySelection() {
+        assertThrows(IllegalArgumentException.class,
+                () -> userService.assignDepartment(List.of(), new UserFilter(), "department-1"));
+        assertThrows(IllegalArgumentException.class,
+                () -> userService.updateUsersEnabledStatus(List.of("not-an-id"), null, true));
+        verify(mongoTemplate, never()).updateMulti(any(Query.class), any(UpdateDefinition.class), eq(User.class));
+    }
+}
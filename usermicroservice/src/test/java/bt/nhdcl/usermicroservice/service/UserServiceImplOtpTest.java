@@ -0,0 +1,235 @@
+package bt.nhdcl.usermicroservice.service;
+
+import bt.nhdcl.usermicroservice.entity.User;
+import bt.nhdcl.usermicroservice.exception.OtpThrottledException;
+import bt.nhdcl.usermicroservice.repository.UserRepository;
+import bt.nhdcl.usermicroservice.security.InMemoryOtpStore;
+import bt.nhdcl.usermicroservice.security.OtpDetails;
+import bt.nhdcl.usermicroservice.security.OtpThrottle;
+import bt.nhdcl.usermicroservice.security.TokenRevocationService;
+import bt.nhdcl.usermicroservice.security.UserDetailsCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserServiceImplOtpTest {
+
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 50;
+    private static final int EMAILS = 8;
+    private static final String CLIENT_IP = "10.0.0.1";
+
+    private UserRepository userRepository;
+    private EmailService emailService;
+    private SimpleMeterRegistry meterRegistry;
+    private InMemoryOtpStore otpStore;
+    private UserServiceImpl userService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findByEmail(anyString())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setEmail(invocation.getArgument(0));
+            return Optional.of(user);
+        });
+        emailService = mock(EmailService.class);
+        when(emailService.sendTemplate(anyString(), anyString(), anyMap(), any())).thenReturn(true);
+
+        meterRegistry = new SimpleMeterRegistry();
+        otpStore = new InMemoryOtpStore(1000);
+        // No cooldowns, so the concurrency tests can issue OTPs back to back
+        userService = userService(new OtpThrottle(0, Integer.MAX_VALUE, 600000, 5, meterRegistry));
+    }
+
+    private UserServiceImpl userService(OtpThrottle otpThrottle) {
+        return new UserServiceImpl(userRepository, mock(PasswordEncoder.class), mock(MongoTemplate.class),
+                mock(CloudinaryService.class), emailService, mock(TokenRevocationService.class),
+                new UserDetailsCache(60000, 100, meterRegistry), otpStore, otpThrottle);
+    }
+
+    @Test
+    void concurrentGenerateResendAndValidate() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int validated = 0;
+                    for (int i = 0; i < ROUNDS; i++) {
+                        String email = "user" + ((thread + i) % EMAILS) + "@nhdcl.bt";
+                        String clientIp = "10.0.0." + thread;
+                        assertTrue(i % 2 == 0
+                                ? userService.generateOtp(email, clientIp)
+                                : userService.resendOtp(email, clientIp));
+
+                        // Another thread may have replaced the code in between; only a current code may pass
+                        OtpDetails current = otpStore.get(email);
+                        if (current != null && userService.validateOtp(email, current.getOtp())) {
+                            validated++;
+                        }
+                        assertFalse(userService.validateOtp(email, "12345x"));
+                    }
+                    return validated;
+                }));
+            }
+            start.countDown();
+
+            int validated = 0;
+            for (Future<Integer> result : results) {
+                validated += result.get(30, TimeUnit.SECONDS);
+            }
+            assertTrue(validated > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(EMAILS, otpStore.size());
+        for (int i = 0; i < EMAILS; i++) {
+            String email = "user" + i + "@nhdcl.bt";
+            OtpDetails otpDetails = otpStore.get(email);
+            assertNotNull(otpDetails);
+            assertTrue(userService.validateOtp(email, otpDetails.getOtp()));
+        }
+    }
+
+    @Test
+    void anOtpCanBeConsumedOnlyOnce() throws Exception {
+        String email = "user@nhdcl.bt";
+        assertTrue(userService.generateOtp(email, CLIENT_IP));
+        String otp = otpStore.get(email).getOtp();
+
+        // Verifying leaves the OTP in place for the reset that follows
+        assertTrue(userService.validateOtp(email, otp));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return userService.consumeOtp(email, otp);
+                }));
+            }
+            start.countDown();
+
+            int consumed = 0;
+            for (Future<Boolean> result : results) {
+                consumed += result.get(30, TimeUnit.SECONDS) ? 1 : 0;
+            }
+            assertEquals(1, consumed);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertFalse(userService.validateOtp(email, otp));
+    }
+
+    @Test
+    void resendsAreThrottledPerEmailAndPerIp() {
+        UserServiceImpl throttled = userService(new OtpThrottle(60000, 2, 600000, 5, meterRegistry));
+
+        assertTrue(throttled.generateOtp("a@nhdcl.bt", CLIENT_IP));
+        OtpThrottledException e = assertThrows(OtpThrottledException.class,
+                () -> throttled.resendOtp("a@nhdcl.bt", "10.0.0.2"));
+        assertTrue(e.getRetryAfterSeconds() > 0);
+
+        assertTrue(throttled.generateOtp("b@nhdcl.bt", CLIENT_IP));
+        assertThrows(OtpThrottledException.class, () -> throttled.generateOtp("c@nhdcl.bt", CLIENT_IP));
+
+        assertEquals(1.0, meterRegistry.counter("otp.throttled", "reason", "email").count());
+        assertEquals(1.0, meterRegistry.counter("otp.throttled", "reason", "ip").count());
+    }
+
+    @Test
+    void anOtpIsDiscardedAfterTooManyWrongGuesses() {
+        String email = "user@nhdcl.bt";
+        assertTrue(userService.generateOtp(email, CLIENT_IP));
+        String otp = otpStore.get(email).getOtp();
+        String wrong = otp.equals("000000") ? "000001" : "000000";
+
+        for (int i = 0; i < 4; i++) {
+            assertFalse(userService.validateOtp(email, wrong));
+        }
+        assertFalse(userService.consumeOtp(email, wrong));
+
+        assertNull(otpStore.get(email));
+        assertFalse(userService.consumeOtp(email, otp));
+        assertEquals(1.0, meterRegistry.counter("otp.throttled", "reason", "attempts").count());
+    }
+
+    @Test
+    void concurrentWrongGuessesCannotExceedTheAttemptLimit() throws Exception {
+        String email = "user@nhdcl.bt";
+        assertTrue(userService.generateOtp(email, CLIENT_IP));
+        String otp = otpStore.get(email).getOtp();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS * 4; t++) {
+                String guess = String.format("%06d", (Integer.parseInt(otp) + 1 + t) % 1000000);
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return userService.validateOtp(email, guess);
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> result : results) {
+                assertFalse(result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Only the first five guesses were compared; the OTP is gone and the right code no longer works
+        assertNull(otpStore.get(email));
+        assertFalse(userService.consumeOtp(email, otp));
+        assertEquals(1.0, meterRegistry.counter("otp.throttled", "reason", "attempts").count());
+    }
+
+    @Test
+    void expiredOtpsAreSweptAndTheStoreIsCapped() {
+        InMemoryOtpStore store = new InMemoryOtpStore(2);
+        long past = System.currentTimeMillis() - 1;
+        assertTrue(store.put("a@nhdcl.bt", new OtpDetails(1, past)));
+        assertTrue(store.put("b@nhdcl.bt", new OtpDetails(2, past)));
+
+        store.purgeExpired();
+        assertEquals(0, store.size());
+
+        long future = System.currentTimeMillis() + 60000;
+        assertTrue(store.put("a@nhdcl.bt", new OtpDetails(1, future)));
+        assertTrue(store.put("b@nhdcl.bt", new OtpDetails(2, future)));
+        assertFalse(store.put("c@nhdcl.bt", new OtpDetails(3, future)));
+        assertTrue(store.put("a@nhdcl.bt", new OtpDetails(4, future)));
+        assertTrue(store.get("a@nhdcl.bt").matches("000004"));
+    }
+}